@@ -0,0 +1,203 @@
+/*	Solarys Chat - Local network UDP broadcaster chat
+ * 	Copyright 2018 Yeshe Santos García <civyshk@gmail.com>
+ *	
+ *	This file is part of Solarys Chat
+ *	
+ *	Solarys Chat is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.project104.chat.solaris;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Compact binary wire format. Every packet is a fixed 20 bytes header
+ * followed by a body of the length given in the header:
+ *
+ * <pre>
+ * offset size
+ *  0      1   MAGIC
+ *  1      1   VERSION
+ *  2      1   command
+ *  3      1   flags
+ *  4      1   ttl
+ *  5      1   unacked distance, 0
+ *  6      2   body length, see MAX_BODY_LENGTH
+ *  8      8   sender token
+ * 16      4   sequence number
+ * 20      -   body
+ * </pre>
+ *
+ * Body of MSG: 4 bytes AUTODELETE followed by the UTF-8 content.
+ * Body of JOIN and HELLO: 4 bytes name version, then the UTF-8 name.
+ * Body of LEAVE: the UTF-8 bye message.
+ * Body of ACK: 4 bytes with the highest reliable sequence received in order.
+ * Body of FRAGMENT: 4 bytes id, 2 bytes index, 2 bytes count, then a
+ * piece of the encoded packet being fragmented.
+ * Body of HEARTBEAT: a membership digest, see Roster, then 4 bytes with
+ * the milliseconds until the sender's next HEARTBEAT.
+ * Body of ROSTER: a list of nodes. Body of SUMMARY: a digest per
+ * bucket of nodes. See Roster for both.
+ * Body of HISTORY_REQ and HISTORY: see History.
+ * Packets with FLAG_RELIABLE put 4 bytes of reliable sequence in front
+ * of their body. Their unacked distance is 1 plus how far back the oldest
+ * sequence still unacknowledged is, or 0 if unknown or too far.
+ *
+ * All numbers are big endian. MAGIC can't be the first byte of an UTF-8
+ * text, so both binary and text packets can be told apart by their
+ * first byte.
+ */
+public class BinaryCodec implements PacketCodec {
+	public static final byte MAGIC = (byte) 0xB5;
+	public static final byte VERSION = 1;
+	public static final int HEADER_LENGTH = 20;
+	/**
+	 * Most the body length field holds. A longer body, only possible in a
+	 * packet sent as FRAGMENTs, has this length and runs to the end of the data
+	 */
+	public static final int MAX_BODY_LENGTH = 0xFFFF;
+	/** Header and body fields of a FRAGMENT, before the piece it carries */
+	public static final int FRAGMENT_HEADER_LENGTH = HEADER_LENGTH + 8;
+
+	/**
+	 * @return true if the data at the buffer position looks like a binary packet
+	 */
+	public static boolean isBinary(ByteBuffer buffer) {
+		return buffer.remaining() > 0 && buffer.get(buffer.position()) == MAGIC;
+	}
+
+	private static int bodyPrefixLength(int command, int flags) {
+		int length = 0;
+		if((flags & Packet.FLAG_RELIABLE) != 0) {
+			length += 4;
+		}
+		if(command == Packet.MSG || command == Packet.ACK
+				|| command == Packet.JOIN || command == Packet.HELLO) {
+			length += 4;
+		}else if(command == Packet.FRAGMENT) {
+			length += 8;
+		}
+		return length;
+	}
+
+	@Override
+	public int encodedLength(Packet packet) {
+		return HEADER_LENGTH + bodyPrefixLength(packet.getCommand(), packet.getFlags()) + packet.getContentLength();
+	}
+
+	@Override
+	public void encode(Packet packet, ByteBuffer buffer) {
+		int command = packet.getCommand();
+		int flags = packet.getFlags();
+		int bodyLength = bodyPrefixLength(command, flags) + packet.getContentLength();
+
+		buffer.put(MAGIC);
+		buffer.put(VERSION);
+		buffer.put((byte) command);
+		buffer.put((byte) flags);
+		buffer.put((byte) packet.getTtl());
+		buffer.put((byte) ((flags & Packet.FLAG_RELIABLE) == 0 ? 0
+				: unackedDistance(packet.getReliableSequence(), packet.getOldestUnacked())));
+		buffer.putShort((short) Math.min(bodyLength, MAX_BODY_LENGTH));
+		buffer.putLong(packet.getSender());
+		buffer.putInt(packet.getSequence());
+		if((flags & Packet.FLAG_RELIABLE) != 0 || command == Packet.ACK) {
+			buffer.putInt(packet.getReliableSequence());
+		}
+		if(command == Packet.MSG) {
+			buffer.putInt(packet.getAutoDelete());
+		}else if(command == Packet.JOIN || command == Packet.HELLO) {
+			buffer.putInt(packet.getNameVersion());
+		}else if(command == Packet.FRAGMENT) {
+			buffer.putInt(packet.getFragmentId());
+			buffer.putShort((short) packet.getFragmentIndex());
+			buffer.putShort((short) packet.getFragmentCount());
+		}
+		if(packet.getContentLength() > 0) {
+			buffer.put(packet.getContentData(), packet.getContentOffset(), packet.getContentLength());
+		}
+	}
+
+	@Override
+	public void setOldestUnacked(ByteBuffer encoded, int reliableSequence, int oldestUnacked) {
+		encoded.put(encoded.position() + 5, (byte) unackedDistance(reliableSequence, oldestUnacked));
+	}
+
+	private static int unackedDistance(int reliableSequence, int oldestUnacked) {
+		if(oldestUnacked == 0) {
+			return 0;
+		}
+		int distance = reliableSequence - oldestUnacked;
+		//Claiming a later one would tell the receiver to skip packets still coming
+		return distance >= 0 && distance < 0xFF ? distance + 1 : 0;
+	}
+
+	@Override
+	public boolean decode(ByteBuffer buffer, Packet packet) {
+		packet.clear();
+		int start = buffer.position();
+		if(buffer.remaining() < HEADER_LENGTH || buffer.get(start) != MAGIC) {
+			buffer.position(buffer.limit());
+			return false;
+		}
+		if(buffer.get(start + 1) != VERSION) {
+			buffer.position(buffer.limit());
+			return false;
+		}
+
+		int command = buffer.get(start + 2) & 0xFF;
+		int bodyLength = buffer.getShort(start + 6) & 0xFFFF;
+		int bodyStart = start + HEADER_LENGTH;
+		if(bodyLength == MAX_BODY_LENGTH && buffer.limit() - bodyStart > MAX_BODY_LENGTH) {
+			bodyLength = buffer.limit() - bodyStart;
+		}
+		if(bodyStart + bodyLength > buffer.limit()) {
+			buffer.position(buffer.limit());
+			return false;
+		}
+		buffer.position(bodyStart + bodyLength);
+
+		int flags = buffer.get(start + 3) & 0xFF;
+		packet.setCommand(command);
+		packet.setFlags(flags);
+		packet.setTtl(buffer.get(start + 4) & 0xFF);
+		packet.setSender(buffer.getLong(start + 8));
+		packet.setSequence(buffer.getInt(start + 16));
+
+		int prefix = bodyPrefixLength(command, flags);
+		if(bodyLength < prefix) {
+			return false;
+		}
+		int field = bodyStart;
+		if((flags & Packet.FLAG_RELIABLE) != 0 || command == Packet.ACK) {
+			packet.setReliableSequence(buffer.getInt(field));
+			field += 4;
+		}
+		int distance = buffer.get(start + 5) & 0xFF;
+		if((flags & Packet.FLAG_RELIABLE) != 0 && distance != 0) {
+			packet.setOldestUnacked(packet.getReliableSequence() - (distance - 1));
+		}
+		if(command == Packet.MSG) {
+			packet.setAutoDelete(buffer.getInt(field));
+		}else if(command == Packet.JOIN || command == Packet.HELLO) {
+			packet.setNameVersion(buffer.getInt(field));
+		}else if(command == Packet.FRAGMENT) {
+			packet.setFragment(buffer.getInt(field),
+					buffer.getShort(field + 4) & 0xFFFF,
+					buffer.getShort(field + 6) & 0xFFFF);
+		}
+		packet.setContent(buffer.array(), buffer.arrayOffset() + bodyStart + prefix, bodyLength - prefix);
+		return true;
+	}
+}
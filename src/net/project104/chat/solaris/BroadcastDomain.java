@@ -0,0 +1,179 @@
+/*	Solarys Chat - Local network UDP broadcaster chat
+ * 	Copyright 2018 Yeshe Santos García <civyshk@gmail.com>
+ *	
+ *	This file is part of Solarys Chat
+ *	
+ *	Solarys Chat is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.project104.chat.solaris;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.InterfaceAddress;
+import java.net.NetworkInterface;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One IPv4 subnet reachable from a local interface, with its own
+ * sending socket bound to the local address on that subnet, and
+ * counters of what has been sent through it
+ */
+public class BroadcastDomain {
+	private final NetworkInterface networkInterface;
+	private final InetAddress localAddress;
+	private final InetAddress broadcast;
+	private final int prefixLength;
+
+	private DatagramChannel channel;
+	private final AtomicLong packetsSent;
+	private final AtomicLong bytesSent;
+	private final AtomicLong errors;
+
+	public BroadcastDomain(NetworkInterface networkInterface, InterfaceAddress address) {
+		this.networkInterface = networkInterface;
+		this.localAddress = address.getAddress();
+		this.broadcast = address.getBroadcast();
+		this.prefixLength = address.getNetworkPrefixLength();
+		this.packetsSent = new AtomicLong();
+		this.bytesSent = new AtomicLong();
+		this.errors = new AtomicLong();
+	}
+
+	public NetworkInterface getNetworkInterface() {
+		return networkInterface;
+	}
+
+	public InetAddress getLocalAddress() {
+		return localAddress;
+	}
+
+	public InetAddress getBroadcast() {
+		return broadcast;
+	}
+
+	public int getPrefixLength() {
+		return prefixLength;
+	}
+
+	/**
+	 * @return true if every address of the other domain is inside this one
+	 */
+	public boolean contains(BroadcastDomain other) {
+		if(other.prefixLength < prefixLength) {
+			return false;
+		}
+		byte[] mine = localAddress.getAddress();
+		byte[] theirs = other.localAddress.getAddress();
+		if(mine.length != theirs.length) {
+			return false;
+		}
+		for(int bit = 0; bit < prefixLength; bit++) {
+			int mask = 0x80 >> (bit % 8);
+			if((mine[bit / 8] & mask) != (theirs[bit / 8] & mask)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return true if this domain was made from that address of the interface
+	 */
+	public boolean isOn(NetworkSnapshot.Entry entry) {
+		return entry.sameAs(networkInterface, localAddress, prefixLength) && broadcast.equals(entry.getBroadcast());
+	}
+
+	/**
+	 * @return true if one of both domains contains the other one
+	 */
+	public boolean overlaps(BroadcastDomain other) {
+		return contains(other) || other.contains(this);
+	}
+
+	private synchronized DatagramChannel getChannel() throws IOException {
+		if(channel == null) {
+			DatagramChannel channel = DatagramChannel.open(StandardProtocolFamily.INET);
+			try {
+				channel.setOption(StandardSocketOptions.SO_BROADCAST, true);
+				channel.bind(new InetSocketAddress(localAddress, 0));
+				channel.configureBlocking(false);
+			}catch(IOException e) {
+				channel.close();
+				throw e;
+			}
+			this.channel = channel;
+		}
+		return channel;
+	}
+
+	/**
+	 * Send the remaining bytes of the buffer to the broadcast address of this domain.
+	 * The socket is not blocking, so this never waits for the network
+	 * @return true if the datagram was handed to the system
+	 */
+	public boolean send(ByteBuffer data, int port) {
+		int length = data.remaining();
+		try {
+			if(getChannel().send(data, new InetSocketAddress(broadcast, port)) == length) {
+				packetsSent.incrementAndGet();
+				bytesSent.addAndGet(length);
+				return true;
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		errors.incrementAndGet();
+		return false;
+	}
+
+	public synchronized void close() {
+		if(channel != null) {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			channel = null;
+		}
+	}
+
+	public long getPacketsSent() {
+		return packetsSent.get();
+	}
+
+	public long getBytesSent() {
+		return bytesSent.get();
+	}
+
+	/**
+	 * @return Packets which couldn't be sent, either because of an error
+	 * or because the socket buffer was full
+	 */
+	public long getErrors() {
+		return errors.get();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s %s/%d -> %s (sent %d packets, %d bytes, %d errors)",
+				networkInterface.getName(), localAddress.getHostAddress(), prefixLength,
+				broadcast.getHostAddress(), getPacketsSent(), getBytesSent(), getErrors());
+	}
+}
@@ -0,0 +1,49 @@
+/*	Solarys Chat - Local network UDP broadcaster chat
+ * 	Copyright 2018 Yeshe Santos García <civyshk@gmail.com>
+ *	
+ *	This file is part of Solarys Chat
+ *	
+ *	Solarys Chat is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.project104.chat.solaris;
+
+/**
+ * Source of time of the network layer and the Model, so that they can
+ * run in the virtual time of a simulation instead of the wall clock
+ */
+public interface Clock {
+	/** The wall clock */
+	public static final Clock SYSTEM = new Clock() {
+		@Override
+		public long millis() {
+			return System.currentTimeMillis();
+		}
+
+		@Override
+		public long nanos() {
+			return System.nanoTime();
+		}
+	};
+
+	/**
+	 * @return Milliseconds since the epoch, like System.currentTimeMillis()
+	 */
+	public long millis();
+
+	/**
+	 * @return Nanoseconds since some fixed origin, like System.nanoTime()
+	 */
+	public long nanos();
+}
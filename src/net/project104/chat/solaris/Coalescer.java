@@ -0,0 +1,201 @@
+/*	Solarys Chat - Local network UDP broadcaster chat
+ * 	Copyright 2018 Yeshe Santos García <civyshk@gmail.com>
+ *	
+ *	This file is part of Solarys Chat
+ *	
+ *	Solarys Chat is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.project104.chat.solaris;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Outbound stage which packs several binary packets going to the same
+ * destination into one datagram. A packet waits at most the configured
+ * window for others to join it, and a datagram never grows past the
+ * maximum size. Urgent packets flush their destination at once.
+ *
+ * It has no thread of its own: the Sender adds packets and calls
+ * flushExpired() whenever the next deadline passes. Not thread safe.
+ *
+ * Only usable with length-prefixed packets, see BinaryCodec
+ */
+public class Coalescer {
+
+	/**
+	 * Where the packed datagrams go
+	 */
+	public interface Output {
+		/**
+		 * @param datagram The bytes to send
+		 * @param destination The address to send to, or null for the whole network
+		 * @return false if the datagram could not be sent
+		 */
+		public boolean transmit(ByteBuffer datagram, InetAddress destination);
+	}
+
+	private static class Pending {
+		final InetAddress destination;
+		final ByteBuffer buffer;
+		final List<Consumer<Boolean>> callbacks;
+		long deadline;
+
+		Pending(InetAddress destination, int size) {
+			this.destination = destination;
+			this.buffer = ByteBuffer.allocate(size);
+			this.callbacks = new ArrayList<>();
+		}
+	}
+
+	private final Output output;
+	private final Clock clock;
+	private final long window;
+	private final int maxSize;
+	private final Map<InetAddress, Pending> pending;
+	private final List<Pending> ready;
+
+	private final AtomicLong packetsIn;
+	private final AtomicLong datagramsOut;
+
+	/**
+	 * @param output Receives the datagrams, from the thread which adds or expires them
+	 * @param windowMillis Longest time a packet may wait for company
+	 * @param maxSize Largest datagram to build
+	 * @param clock Where windows start from, its nanos() like flushExpired() is called with
+	 */
+	public Coalescer(Output output, long windowMillis, int maxSize, Clock clock) {
+		this.output = output;
+		this.clock = clock;
+		this.window = windowMillis;
+		this.maxSize = maxSize;
+		this.pending = new HashMap<>();
+		this.ready = new ArrayList<>();
+		this.packetsIn = new AtomicLong();
+		this.datagramsOut = new AtomicLong();
+	}
+
+	/**
+	 * Queue an encoded packet
+	 * @param packet The packet bytes, between position and limit
+	 * @param destination The address to send to, or null for the whole network
+	 * @param urgent true to send it, and whatever waits for the same destination, right now
+	 * @param done Told whether the datagram carrying the packet was sent. May be null
+	 */
+	public void add(ByteBuffer packet, InetAddress destination, boolean urgent, Consumer<Boolean> done) {
+		packetsIn.incrementAndGet();
+		if(packet.remaining() > maxSize) {
+			boolean sent = send(packet, destination);
+			if(done != null) {
+				done.accept(sent);
+			}
+			return;
+		}
+
+		Pending waiting = pending.get(destination);
+		if(waiting != null && waiting.buffer.remaining() < packet.remaining()) {
+			pending.remove(destination);
+			ready.add(waiting);
+			waiting = null;
+		}
+		if(waiting == null) {
+			waiting = new Pending(destination, maxSize);
+			waiting.deadline = clock.nanos() + window * 1000000;
+			pending.put(destination, waiting);
+		}
+		waiting.buffer.put(packet);
+		if(done != null) {
+			waiting.callbacks.add(done);
+		}
+		if(urgent) {
+			pending.remove(destination);
+			ready.add(waiting);
+		}
+		flushReady();
+	}
+
+	/**
+	 * Send every datagram whose window is over
+	 * @param now clock.nanos(), monotonic so that a wall clock step can't hold datagrams back
+	 * @return When the next window ends in clock.nanos(), or Long.MAX_VALUE if nothing waits
+	 */
+	public long flushExpired(long now) {
+		long next = Long.MAX_VALUE;
+		Iterator<Pending> it = pending.values().iterator();
+		while(it.hasNext()) {
+			Pending waiting = it.next();
+			if(waiting.deadline <= now) {
+				it.remove();
+				ready.add(waiting);
+			}else {
+				next = Math.min(next, waiting.deadline);
+			}
+		}
+		flushReady();
+		return next;
+	}
+
+	/**
+	 * Send everything still waiting
+	 */
+	public void flushAll() {
+		ready.addAll(pending.values());
+		pending.clear();
+		flushReady();
+	}
+
+	private void flushReady() {
+		for(Pending waiting : ready) {
+			waiting.buffer.flip();
+			boolean sent = send(waiting.buffer, waiting.destination);
+			for(Consumer<Boolean> done : waiting.callbacks) {
+				done.accept(sent);
+			}
+		}
+		ready.clear();
+	}
+
+	private boolean send(ByteBuffer datagram, InetAddress destination) {
+		datagramsOut.incrementAndGet();
+		try {
+			return output.transmit(datagram, destination);
+		}catch(RuntimeException e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	/**
+	 * @return Packets handed to this stage
+	 */
+	public long getPacketsIn() {
+		return packetsIn.get();
+	}
+
+	/**
+	 * @return Datagrams actually sent. The lower compared to
+	 * getPacketsIn(), the more packets were packed together
+	 */
+	public long getDatagramsOut() {
+		return datagramsOut.get();
+	}
+}
@@ -0,0 +1,193 @@
+/*	Solarys Chat - Local network UDP broadcaster chat
+ * 	Copyright 2018 Yeshe Santos García <civyshk@gmail.com>
+ *	
+ *	This file is part of Solarys Chat
+ *	
+ *	Solarys Chat is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.project104.chat.solaris;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Deflates packet contents with a preset dictionary of chat words, so
+ * that even short messages get smaller. Both ends must use the very same
+ * DICTIONARY, which is why peers advertise Packet.FLAG_CAN_INFLATE
+ * before anything compressed is sent to them.
+ *
+ * Deflaters and Inflaters hold native memory and are costly to create,
+ * so they are pooled and reused by any thread.
+ */
+public class Compressor {
+	/**
+	 * Words and fragments frequent in chat. Deflate finds matches anywhere in
+	 * the dictionary, but those near the end are cheaper to refer to.
+	 * Changing this breaks compatibility with every other node. Non ASCII
+	 * characters are escaped so that the source encoding doesn't change it
+	 */
+	static final byte[] DICTIONARY = (
+			"http://https://www..com.org.net/index.html?id= :) :( :D ;) xD jaja haha lol "
+			+ "gracias hola buenos d\u00edas tardes noches qu\u00e9 c\u00f3mo d\u00f3nde cu\u00e1ndo porque para por "
+			+ "con una los las del que est\u00e1 estoy vale bueno s\u00ed no pero ahora luego ma\u00f1ana hoy "
+			+ "thanks thank you please sorry hello hi hey good morning afternoon night "
+			+ "yes no ok okay sure maybe what when where why who how which "
+			+ "today tomorrow yesterday now later soon meeting lunch coffee break home "
+			+ "I'm I'll I've you're it's that's don't can't won't didn't isn't "
+			+ "would could should have has had been will just know think want need "
+			+ "about there their they this that with from your the and for are you ")
+			.getBytes(StandardCharsets.UTF_8);
+
+	public static final int DEFAULT_THRESHOLD = 64;
+	/** Largest content inflated, about what FRAGMENTs can carry */
+	public static final int MAX_INFLATED_LENGTH = 1 << 20;
+
+	private final int threshold;
+	private final Queue<Deflater> deflaters;
+	private final Queue<Inflater> inflaters;
+
+	private final AtomicLong bytesIn;
+	private final AtomicLong bytesOut;
+	private final AtomicLong skipped;
+
+	/**
+	 * @param threshold Contents shorter than this are never compressed,
+	 * 0 to never compress but still decompress
+	 */
+	public Compressor(int threshold) {
+		this.threshold = threshold;
+		this.deflaters = new ConcurrentLinkedQueue<>();
+		this.inflaters = new ConcurrentLinkedQueue<>();
+		this.bytesIn = new AtomicLong();
+		this.bytesOut = new AtomicLong();
+		this.skipped = new AtomicLong();
+	}
+
+	/**
+	 * Compress the content of a packet in place and set FLAG_COMPRESSED,
+	 * only if it is long enough and actually gets shorter
+	 * @return true if the packet was compressed
+	 */
+	public boolean compress(Packet packet) {
+		int length = packet.getContentLength();
+		if(threshold <= 0 || length < threshold || packet.hasFlag(Packet.FLAG_COMPRESSED)) {
+			return false;
+		}
+
+		Deflater deflater = deflaters.poll();
+		if(deflater == null) {
+			deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+		}
+		byte[] output = new byte[length];
+		int written;
+		try {
+			deflater.setDictionary(DICTIONARY);
+			deflater.setInput(packet.getContentData(), packet.getContentOffset(), length);
+			deflater.finish();
+			written = deflater.deflate(output);
+			if(!deflater.finished()) {
+				written = length;
+			}
+		} finally {
+			deflater.reset();
+			deflaters.offer(deflater);
+		}
+
+		if(written >= length) {
+			skipped.incrementAndGet();
+			return false;
+		}
+		bytesIn.addAndGet(length);
+		bytesOut.addAndGet(written);
+		packet.setContent(output, 0, written);
+		packet.setFlags(packet.getFlags() | Packet.FLAG_COMPRESSED);
+		return true;
+	}
+
+	/**
+	 * Decompress the content of a packet in place and clear FLAG_COMPRESSED
+	 * @return false if the content is corrupt. The packet is left as it was
+	 */
+	public boolean decompress(Packet packet) {
+		if(!packet.hasFlag(Packet.FLAG_COMPRESSED)) {
+			return true;
+		}
+
+		Inflater inflater = inflaters.poll();
+		if(inflater == null) {
+			inflater = new Inflater(true);
+		}
+		byte[] output = new byte[Math.max(256, packet.getContentLength() * 4)];
+		int written = 0;
+		try {
+			inflater.setDictionary(DICTIONARY);
+			inflater.setInput(packet.getContentData(), packet.getContentOffset(), packet.getContentLength());
+			while(!inflater.finished()) {
+				if(written == output.length) {
+					if(output.length >= MAX_INFLATED_LENGTH) {
+						return false;
+					}
+					output = Arrays.copyOf(output, Math.min(output.length * 2, MAX_INFLATED_LENGTH));
+				}
+				int n = inflater.inflate(output, written, output.length - written);
+				if(n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					return false;
+				}
+				written += n;
+			}
+		} catch (DataFormatException e) {
+			System.err.println("Received corrupt compressed content: " + e.getMessage());
+			return false;
+		} finally {
+			inflater.reset();
+			inflaters.offer(inflater);
+		}
+
+		packet.setContent(output, 0, written);
+		packet.setFlags(packet.getFlags() & ~Packet.FLAG_COMPRESSED);
+		return true;
+	}
+
+	public int getThreshold() {
+		return threshold;
+	}
+
+	/**
+	 * @return Content bytes before compression, of the packets compressed
+	 */
+	public long getBytesIn() {
+		return bytesIn.get();
+	}
+
+	/**
+	 * @return Content bytes after compression, of the packets compressed
+	 */
+	public long getBytesOut() {
+		return bytesOut.get();
+	}
+
+	/**
+	 * @return Packets over the threshold which didn't get any shorter
+	 */
+	public long getSkipped() {
+		return skipped.get();
+	}
+}
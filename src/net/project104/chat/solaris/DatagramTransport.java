@@ -0,0 +1,106 @@
+/*	Solarys Chat - Local network UDP broadcaster chat
+ * 	Copyright 2018 Yeshe Santos García <civyshk@gmail.com>
+ *	
+ *	This file is part of Solarys Chat
+ *	
+ *	Solarys Chat is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.project104.chat.solaris;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * What NetManager sends datagrams through and receives them from.
+ * UdpTransport uses the real network; other implementations, like the
+ * in memory one of the simulator, let many nodes run in a single JVM
+ */
+public interface DatagramTransport {
+	/**
+	 * Implemented by NetManager
+	 */
+	public interface Listener {
+		/**
+		 * @return A listener for a new receiving thread. Each one is only
+		 * called from its own thread
+		 */
+		public Receiver.Listener newShard();
+
+		/**
+		 * The local address or the broadcast addresses changed
+		 */
+		public void networkChanged();
+	}
+
+	/**
+	 * Called once by NetManager, before anything else but getLocalAddress() and getMtu()
+	 * @param timers For periodic work of the transport
+	 * @param executor For work which may block
+	 */
+	public void open(Listener listener, Scheduler timers, Executor executor);
+
+	/**
+	 * Start receiving
+	 */
+	public void start() throws IOException;
+
+	/**
+	 * Stop receiving. Sending keeps working
+	 */
+	public void stop();
+
+	public boolean isStarted();
+
+	/**
+	 * Stop receiving and release everything
+	 */
+	public void close();
+
+	/**
+	 * @return The address other nodes see this one at
+	 */
+	public InetAddress getLocalAddress();
+
+	/**
+	 * @return The largest IP packet the network carries
+	 */
+	public int getMtu();
+
+	/**
+	 * Send the remaining bytes of the buffer to every node
+	 * @return true if the datagram was sent at least once
+	 */
+	public boolean sendPublic(ByteBuffer datagram);
+
+	/**
+	 * Send the remaining bytes of the buffer to one node
+	 * @return true if the datagram was handed to the network
+	 */
+	public boolean send(ByteBuffer datagram, InetAddress destination);
+
+	/**
+	 * @return The addresses public datagrams can be sent to, the one
+	 * used by default first. Empty if there's no such choice
+	 */
+	public List<InetAddress> getBroadcasts();
+
+	/**
+	 * @param broadcast One of getBroadcasts(), or null for the default one
+	 */
+	public void setBroadcast(InetAddress broadcast);
+}
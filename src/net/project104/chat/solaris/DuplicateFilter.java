@@ -0,0 +1,148 @@
+/*	Solarys Chat - Local network UDP broadcaster chat
+ * 	Copyright 2018 Yeshe Santos García <civyshk@gmail.com>
+ *	
+ *	This file is part of Solarys Chat
+ *	
+ *	Solarys Chat is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.project104.chat.solaris;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the (sender token, sequence) identity of recently received
+ * packets, to drop copies of a packet which arrived through several
+ * broadcast addresses or interfaces.
+ *
+ * Identities are hashed into two generations of open addressing tables
+ * of longs. New ones go into the current generation, and both are looked
+ * up. Every window, or earlier if the current one fills up, the older
+ * generation is wiped and becomes the current one, so memory is fixed
+ * and an identity is remembered between one and two windows.
+ */
+public class DuplicateFilter {
+	public static final long DEFAULT_WINDOW = 5000;
+	public static final int DEFAULT_CAPACITY = 4096;
+
+	private final long window;
+	private final int maxEntries;
+	private final Clock clock;
+	private long[] current;
+	private long[] previous;
+	private int entries;
+	private long rotateAt;
+
+	private final AtomicLong duplicates;
+	private final AtomicLong rotations;
+
+	/**
+	 * @param windowMillis How long an identity is remembered, at least
+	 * @param capacity Most identities in one generation
+	 */
+	public DuplicateFilter(long windowMillis, int capacity) {
+		this(windowMillis, capacity, Clock.SYSTEM);
+	}
+
+	public DuplicateFilter(long windowMillis, int capacity, Clock clock) {
+		this.clock = clock;
+		this.window = windowMillis;
+		this.maxEntries = capacity;
+		int size = Integer.highestOneBit(Math.max(2, capacity) * 4 - 1);
+		this.current = new long[size];
+		this.previous = new long[size];
+		this.duplicates = new AtomicLong();
+		this.rotations = new AtomicLong();
+	}
+
+	/**
+	 * Look up a packet and remember it
+	 * @return true if the same identity was seen inside the window
+	 */
+	public synchronized boolean isDuplicate(long sender, int sequence) {
+		long now = clock.millis();
+		if(now >= rotateAt || entries >= maxEntries) {
+			if(now >= rotateAt + window) {
+				//nothing received for a whole window, both generations are stale
+				rotate(now);
+			}
+			rotate(now);
+		}
+
+		long key = hash(sender, sequence);
+		if(contains(previous, key)) {
+			duplicates.incrementAndGet();
+			return true;
+		}
+		int mask = current.length - 1;
+		int index = (int) key & mask;
+		while(current[index] != 0) {
+			if(current[index] == key) {
+				duplicates.incrementAndGet();
+				return true;
+			}
+			index = (index + 1) & mask;
+		}
+		current[index] = key;
+		entries++;
+		return false;
+	}
+
+	private static boolean contains(long[] table, long key) {
+		int mask = table.length - 1;
+		int index = (int) key & mask;
+		while(table[index] != 0) {
+			if(table[index] == key) {
+				return true;
+			}
+			index = (index + 1) & mask;
+		}
+		return false;
+	}
+
+	private void rotate(long now) {
+		long[] wiped = previous;
+		Arrays.fill(wiped, 0);
+		previous = current;
+		current = wiped;
+		entries = 0;
+		rotateAt = now + window;
+		rotations.incrementAndGet();
+	}
+
+	/**
+	 * @return A well mixed, never 0, 64 bit hash of the identity
+	 */
+	private static long hash(long sender, int sequence) {
+		long h = sender * 0x9E3779B97F4A7C15L + sequence;
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+		return h == 0 ? 1 : h;
+	}
+
+	/**
+	 * @return Packets dropped as copies
+	 */
+	public long getDuplicates() {
+		return duplicates.get();
+	}
+
+	public long getRotations() {
+		return rotations.get();
+	}
+}
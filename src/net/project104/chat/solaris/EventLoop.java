@@ -0,0 +1,467 @@
+/*	Solarys Chat - Local network UDP broadcaster chat
+ * 	Copyright 2018 Yeshe Santos García <civyshk@gmail.com>
+ *	
+ *	This file is part of Solarys Chat
+ *	
+ *	Solarys Chat is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.project104.chat.solaris;
+
+import java.lang.reflect.InvocationTargetException;
+import java.net.InetAddress;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Hands events from the network threads over to the Model. Producers
+ * publish into a preallocated ring buffer and return at once; a single
+ * consumer thread takes whatever is published, in batches, and applies
+ * each batch through a Dispatcher. With SWING every Model change then
+ * happens on the event dispatch thread, like the GUI's own calls.
+ *
+ * Each slot has its own sequence number, telling whether it is free for
+ * the producer which claimed it or ready for the consumer, so producers
+ * only contend on claiming a slot.
+ *
+ * An inline EventLoop is never started: whichever producer publishes
+ * applies the events itself, as soon as nobody holds the loop, or at once
+ * if the ring is full. That's for simulations, where nothing may run on
+ * its own.
+ */
+public class EventLoop extends Thread {
+	public static final int DEFAULT_CAPACITY = 1024;
+	/** An inline loop applies its events early when full, so it needs less room */
+	public static final int INLINE_CAPACITY = 256;
+	public static final int MAX_BATCH = 64;
+	/** Milliseconds a producer waits for a slot of a full ring before dropping its event */
+	public static final int FULL_WAIT = 100;
+	/** Command of the event telling the network interfaces changed, not a Packet command */
+	public static final int NETWORK = 0;
+
+	/**
+	 * Runs a batch of events somewhere, and returns once it has run
+	 */
+	public interface Dispatcher {
+		public void dispatch(Runnable batch) throws Exception;
+	}
+
+	/** On the Swing event dispatch thread */
+	public static final Dispatcher SWING = batch -> {
+		try {
+			SwingUtilities.invokeAndWait(batch);
+		} catch (InvocationTargetException e) {
+			e.getCause().printStackTrace();
+		}
+	};
+	/** On the consumer thread itself, when there is no GUI */
+	public static final Dispatcher INLINE = Runnable::run;
+
+	public interface Handler {
+		/**
+		 * @param event Only valid during the call, the slot is reused afterwards
+		 */
+		public void handle(Event event);
+	}
+
+	/**
+	 * One slot of the ring. The command is one of Packet.MSG, JOIN, LEAVE, HELLO or HISTORY
+	 */
+	public static final class Event {
+		private int command;
+		private InetAddress from;
+		private String content;
+		private int autoDelete;
+		private boolean isPublic;
+		private long sender;
+		private int sequence;
+		private List<History.Entry> history;
+
+		public int getCommand() {
+			return command;
+		}
+
+		public InetAddress getFrom() {
+			return from;
+		}
+
+		public String getContent() {
+			return content;
+		}
+
+		public int getAutoDelete() {
+			return autoDelete;
+		}
+
+		public boolean isPublic() {
+			return isPublic;
+		}
+
+		/**
+		 * @return The sender token of a MSG, 0 if unknown
+		 */
+		public long getSender() {
+			return sender;
+		}
+
+		/**
+		 * @return The sequence of a MSG, 0 if unknown
+		 */
+		public int getSequence() {
+			return sequence;
+		}
+
+		/**
+		 * @return The messages of a HISTORY event
+		 */
+		public List<History.Entry> getHistory() {
+			return history;
+		}
+	}
+
+	private final Handler handler;
+	private final Dispatcher dispatcher;
+	private final Event[] slots;
+	private final AtomicLongArray sequences;
+	private final int mask;
+	private final AtomicLong claimed;
+	private final Runnable batch;
+	private volatile long head;
+	private int batchSize;
+	private volatile boolean waiting;
+	private volatile boolean running;
+	/** Producers publishing a batch, the consumer isn't woken until they're done */
+	private final AtomicInteger holders;
+	private final boolean inline;
+	/** Taken by the producer which applies the events of an inline loop */
+	private final AtomicBoolean applying;
+
+	private final AtomicLong published;
+	private final AtomicLong batches;
+	private final AtomicLong stalls;
+	private final AtomicLong dropped;
+
+	/**
+	 * @param capacity Number of slots, rounded up to a power of 2
+	 */
+	public EventLoop(Handler handler, Dispatcher dispatcher, int capacity) {
+		this(handler, dispatcher, capacity, false);
+	}
+
+	/**
+	 * @param inline true for a loop without a thread, see the class description
+	 */
+	public EventLoop(Handler handler, Dispatcher dispatcher, int capacity, boolean inline) {
+		super("Solarys events");
+		setDaemon(true);
+		this.handler = handler;
+		this.dispatcher = dispatcher;
+		int size = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+		this.slots = new Event[size];
+		this.sequences = new AtomicLongArray(size);
+		for(int i = 0; i < size; i++) {
+			slots[i] = new Event();
+			sequences.set(i, i);
+		}
+		this.mask = size - 1;
+		this.claimed = new AtomicLong();
+		this.holders = new AtomicInteger();
+		this.inline = inline;
+		this.applying = new AtomicBoolean();
+		this.batch = this::applyBatch;
+		this.published = new AtomicLong();
+		this.batches = new AtomicLong();
+		this.stalls = new AtomicLong();
+		this.dropped = new AtomicLong();
+	}
+
+	/**
+	 * Called from any thread. It only waits if the ring is full, which
+	 * means the consumer is a whole ring behind, and not beyond FULL_WAIT
+	 */
+	public void publish(int command, InetAddress from, String content, int autoDelete, boolean isPublic, long sender, int sequence) {
+		long slot = claim();
+		if(slot < 0) {
+			return;
+		}
+		Event event = slots[(int) slot & mask];
+		event.command = command;
+		event.from = from;
+		event.content = content;
+		event.autoDelete = autoDelete;
+		event.isPublic = isPublic;
+		event.sender = sender;
+		event.sequence = sequence;
+		event.history = null;
+		commit(slot);
+	}
+
+	public void publish(int command, InetAddress from, String content) {
+		publish(command, from, content, -1, false, 0, 0);
+	}
+
+	/**
+	 * Publish a HISTORY batch as a single event
+	 */
+	public void publishHistory(InetAddress from, List<History.Entry> history) {
+		long slot = claim();
+		if(slot < 0) {
+			return;
+		}
+		Event event = slots[(int) slot & mask];
+		event.command = Packet.HISTORY;
+		event.from = from;
+		event.content = null;
+		event.autoDelete = -1;
+		event.isPublic = true;
+		event.sender = 0;
+		event.sequence = 0;
+		event.history = history;
+		commit(slot);
+	}
+
+	/**
+	 * @return The sequence of the slot claimed, once it is free, or -1 if
+	 * the ring stayed full for FULL_WAIT or the loop is stopping. A
+	 * sequence is only taken once its slot is free, so the events behind
+	 * it never wait for a slot that nobody will commit
+	 */
+	private long claim() {
+		long deadline = 0;
+		while(true) {
+			long sequence = claimed.get();
+			if(sequences.get((int) sequence & mask) == sequence) {
+				if(claimed.compareAndSet(sequence, sequence + 1)) {
+					return sequence;
+				}
+				continue;
+			}
+			if(inline && applyPending()) {
+				continue;
+			}
+			if(inline || !running) {
+				dropped.incrementAndGet();
+				return -1;
+			}
+			//wake the consumer even if held, a whole ring is batch enough
+			LockSupport.unpark(this);
+			long now = System.nanoTime();
+			if(deadline == 0) {
+				stalls.incrementAndGet();
+				deadline = now + FULL_WAIT * 1000000L;
+			}else if(now - deadline > 0) {
+				//the consumer may be stuck behind whoever called us
+				dropped.incrementAndGet();
+				return -1;
+			}
+			LockSupport.parkNanos(100000);
+		}
+	}
+
+	private void commit(long sequence) {
+		sequences.set((int) sequence & mask, sequence + 1);
+		published.incrementAndGet();
+		if(inline) {
+			applyInline();
+		}else if(waiting && holders.get() == 0) {
+			LockSupport.unpark(this);
+		}
+	}
+
+	/**
+	 * Hold the consumer back while publishing several events, so that
+	 * they're applied together instead of the first one alone. A full
+	 * ring still wakes the consumer, so a held loop never waits on the
+	 * producer holding it. Must be followed by release()
+	 */
+	public void hold() {
+		holders.incrementAndGet();
+	}
+
+	/**
+	 * Wake the consumer for what was published since hold(), unless
+	 * another producer still holds it
+	 */
+	public void release() {
+		if(holders.decrementAndGet() != 0) {
+			return;
+		}
+		if(inline) {
+			applyInline();
+		}else if(waiting) {
+			LockSupport.unpark(this);
+		}
+	}
+
+	/**
+	 * Apply everything published, unless someone holds the loop or is
+	 * already applying it, e.g. further up this same thread's stack
+	 */
+	private void applyInline() {
+		while(holders.get() == 0 && applying.compareAndSet(false, true)) {
+			try {
+				while(collectBatch()) {
+					dispatchBatch();
+				}
+			}finally {
+				applying.set(false);
+			}
+			//published by another thread after the last collectBatch()
+			if(sequences.get((int) head & mask) != head + 1) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Make room in a full inline loop, applying what is ready even if
+	 * the loop is held. Events are still applied in order, only in
+	 * smaller batches
+	 * @return false if nothing could be applied, as when an event being
+	 * applied publishes a whole ring of events
+	 */
+	private boolean applyPending() {
+		if(!applying.compareAndSet(false, true)) {
+			return false;
+		}
+		try {
+			boolean applied = false;
+			while(collectBatch()) {
+				dispatchBatch();
+				applied = true;
+			}
+			return applied;
+		}finally {
+			applying.set(false);
+		}
+	}
+
+	@Override
+	public void start() {
+		running = true;
+		super.start();
+	}
+
+	/**
+	 * Apply whatever is already published and end the thread
+	 */
+	public void stopLoop() {
+		running = false;
+		LockSupport.unpark(this);
+	}
+
+	@Override
+	public void run() {
+		while(running) {
+			if(!collectBatch()) {
+				waiting = true;
+				if(!collectBatch()) {
+					LockSupport.park(this);
+					waiting = false;
+					continue;
+				}
+				waiting = false;
+			}
+			dispatchBatch();
+		}
+		while(collectBatch()) {
+			dispatchBatch();
+		}
+	}
+
+	/**
+	 * @return true if at least one event is ready after head
+	 */
+	private boolean collectBatch() {
+		while(batchSize < MAX_BATCH) {
+			long sequence = head + batchSize;
+			if(sequences.get((int) sequence & mask) != sequence + 1) {
+				break;
+			}
+			batchSize++;
+		}
+		return batchSize > 0;
+	}
+
+	private void dispatchBatch() {
+		try {
+			dispatcher.dispatch(batch);
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		for(int i = 0; i < batchSize; i++) {
+			long sequence = head + i;
+			int index = (int) sequence & mask;
+			slots[index].from = null;
+			slots[index].content = null;
+			slots[index].history = null;
+			sequences.set(index, sequence + slots.length);
+		}
+		head += batchSize;
+		batchSize = 0;
+		batches.incrementAndGet();
+	}
+
+	/**
+	 * Runs inside the Dispatcher
+	 */
+	private void applyBatch() {
+		for(int i = 0; i < batchSize; i++) {
+			try {
+				handler.handle(slots[(int) (head + i) & mask]);
+			}catch(RuntimeException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * @return Events published and not yet applied
+	 */
+	public long getBacklog() {
+		return published.get() - head;
+	}
+
+	public long getPublished() {
+		return published.get();
+	}
+
+	/**
+	 * @return Batches applied. Compared to getPublished(), how many events
+	 * each dispatch carries on average
+	 */
+	public long getBatches() {
+		return batches.get();
+	}
+
+	/**
+	 * @return Times a producer found the ring full and had to wait
+	 */
+	public long getStalls() {
+		return stalls.get();
+	}
+
+	/**
+	 * @return Events lost because the ring stayed full
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+}
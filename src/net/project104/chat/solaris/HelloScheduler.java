@@ -0,0 +1,155 @@
+/*	Solarys Chat - Local network UDP broadcaster chat
+ * 	Copyright 2018 Yeshe Santos García <civyshk@gmail.com>
+ *	
+ *	This file is part of Solarys Chat
+ *	
+ *	Solarys Chat is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.project104.chat.solaris;
+
+import java.net.InetAddress;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Answers JOINs without flooding the network when many nodes join at once.
+ *
+ * Instead of one HELLO per node per joiner, every node waits a random
+ * delay and then sends one public ROSTER, covering every JOIN heard
+ * meanwhile. If a ROSTER from another node which already lists this one
+ * is heard during the delay, the joiners have learnt about this node
+ * from it, and the reply is suppressed. Nodes using the text format
+ * can't read a ROSTER and still get a HELLO right away.
+ */
+public class HelloScheduler {
+	public static final long MIN_DELAY = 50;
+	public static final long MAX_DELAY = 2000;
+	/** Extra delay per known node, so that larger networks spread replies wider */
+	public static final long DELAY_PER_NODE = 20;
+
+	public interface Output {
+		/**
+		 * Send a public ROSTER. Called from the timer thread
+		 */
+		public void sendRoster();
+
+		/**
+		 * Send a HELLO to one node which can't read a ROSTER
+		 */
+		public void sendHello(InetAddress address);
+	}
+
+	private final Output output;
+	private final Scheduler.Timeout reply;
+	private final Random random;
+	private boolean pending;
+
+	private final AtomicLong joinsHeard;
+	private final AtomicLong rostersSent;
+	private final AtomicLong suppressed;
+	private final AtomicLong hellosSent;
+
+	/**
+	 * @param random For the delay of replies
+	 */
+	public HelloScheduler(Scheduler timers, Random random, Output output) {
+		this.output = output;
+		this.reply = timers.newTimeout(this::fire);
+		this.random = random;
+		this.joinsHeard = new AtomicLong();
+		this.rostersSent = new AtomicLong();
+		this.suppressed = new AtomicLong();
+		this.hellosSent = new AtomicLong();
+	}
+
+	/**
+	 * A node joined and must learn about this one
+	 * @param binary true if the node can read a ROSTER
+	 * @param knownNodes Nodes in the roster, to size the delay
+	 */
+	public void joined(InetAddress address, boolean binary, int knownNodes) {
+		joinsHeard.incrementAndGet();
+		if(!binary) {
+			hellosSent.incrementAndGet();
+			output.sendHello(address);
+			return;
+		}
+		synchronized(this) {
+			if(pending) {
+				return;
+			}
+			pending = true;
+			long spread = Math.min(MAX_DELAY, MIN_DELAY + knownNodes * DELAY_PER_NODE);
+			reply.schedule(MIN_DELAY + (long) (random.nextDouble() * (spread - MIN_DELAY)));
+		}
+	}
+
+	/**
+	 * Another node sent a ROSTER
+	 * @param listsSelf true if it lists this node with its current name
+	 */
+	public void heardRoster(boolean listsSelf) {
+		if(!listsSelf) {
+			return;
+		}
+		synchronized(this) {
+			if(!pending) {
+				return;
+			}
+			pending = false;
+			reply.cancel();
+		}
+		suppressed.incrementAndGet();
+	}
+
+	private void fire() {
+		synchronized(this) {
+			if(!pending) {
+				return;
+			}
+			pending = false;
+		}
+		rostersSent.incrementAndGet();
+		output.sendRoster();
+	}
+
+	/**
+	 * @return JOINs which asked for a reply
+	 */
+	public long getJoinsHeard() {
+		return joinsHeard.get();
+	}
+
+	/**
+	 * @return ROSTER packets sent, each one answering one or more JOINs
+	 */
+	public long getRostersSent() {
+		return rostersSent.get();
+	}
+
+	/**
+	 * @return Replies not sent because another ROSTER already covered them
+	 */
+	public long getSuppressed() {
+		return suppressed.get();
+	}
+
+	/**
+	 * @return HELLO packets sent to nodes using the text format
+	 */
+	public long getHellosSent() {
+		return hellosSent.get();
+	}
+}
@@ -0,0 +1,338 @@
+/*	Solarys Chat - Local network UDP broadcaster chat
+ * 	Copyright 2018 Yeshe Santos García <civyshk@gmail.com>
+ *	
+ *	This file is part of Solarys Chat
+ *	
+ *	Solarys Chat is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.project104.chat.solaris;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Recent public messages, so that nodes joining late can catch up.
+ *
+ * Every node remembers the last CAPACITY public messages. Right after
+ * joining, a node sends a HISTORY_REQ to the first PEERS_TO_ASK binary
+ * nodes it hears from; each one answers with HISTORY packets of about
+ * BATCH_BYTES, one every BATCH_INTERVAL. Answering is bounded: at most
+ * MAX_SESSIONS at once, MAX_MESSAGES per request, and one request per
+ * node every REQUEST_COOLDOWN. Messages carry their (sender token,
+ * sequence) identity, so the copies received from several nodes or
+ * also received live are merged by the Room.
+ *
+ * HISTORY_REQ content: 4 bytes most messages, 4 bytes oldest age in seconds.
+ * HISTORY content, a list of:
+ *
+ * <pre>
+ * 4   IPv4 address of the author
+ * 8   sender token
+ * 4   sequence
+ * 8   timestamp
+ * 1   name length
+ * -   UTF-8 name
+ * 2   text length
+ * -   UTF-8 text
+ * </pre>
+ */
+public class History {
+	public static final int CAPACITY = 200;
+	public static final int MAX_MESSAGES = 100;
+	public static final int MAX_AGE = 3600;
+	public static final int MAX_SESSIONS = 2;
+	public static final int BATCH_BYTES = 1000;
+	public static final long BATCH_INTERVAL = 100;
+	public static final long REQUEST_COOLDOWN = 30000;
+	public static final int PEERS_TO_ASK = 2;
+	/** How long after joining the first nodes heard are asked */
+	public static final long ASK_WINDOW = 10000;
+
+	public static class Entry {
+		private final InetAddress origin;
+		private final String name;
+		private final String text;
+		private final long timestamp;
+		private final long sender;
+		private final int sequence;
+
+		public Entry(InetAddress origin, String name, String text, long timestamp, long sender, int sequence) {
+			this.origin = origin;
+			this.name = name;
+			this.text = text;
+			this.timestamp = timestamp;
+			this.sender = sender;
+			this.sequence = sequence;
+		}
+
+		public InetAddress getOrigin() {
+			return origin;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getText() {
+			return text;
+		}
+
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		public long getSender() {
+			return sender;
+		}
+
+		public int getSequence() {
+			return sequence;
+		}
+	}
+
+	public interface Output {
+		public void sendRequest(InetAddress address, byte[] content);
+
+		public void sendBatch(InetAddress address, byte[] content);
+	}
+
+	private class Session {
+		final InetAddress address;
+		final List<Entry> entries;
+		final Scheduler.Timeout timeout;
+		int next;
+
+		Session(InetAddress address, List<Entry> entries) {
+			this.address = address;
+			this.entries = entries;
+			this.timeout = timers.newTimeout(() -> executor.execute(() -> sendBatch(this)));
+		}
+	}
+
+	private final Scheduler timers;
+	private final Clock clock;
+	private final Executor executor;
+	private final Output output;
+	private final ArrayDeque<Entry> entries;
+	private final List<Session> sessions;
+	private final Map<InetAddress, Long> lastRequests;
+	private final Set<InetAddress> asked;
+	private long askUntil;
+
+	private final AtomicLong requestsServed;
+	private final AtomicLong requestsRefused;
+	private final AtomicLong batchesSent;
+
+	/**
+	 * @param executor Where batches are built and handed to the Output,
+	 * not to hold the timer thread while they are compressed
+	 */
+	public History(Scheduler timers, Clock clock, Executor executor, Output output) {
+		this.timers = timers;
+		this.clock = clock;
+		this.executor = executor;
+		this.output = output;
+		this.entries = new ArrayDeque<>();
+		this.sessions = new ArrayList<>();
+		this.lastRequests = new HashMap<>();
+		this.asked = new HashSet<>();
+		this.requestsServed = new AtomicLong();
+		this.requestsRefused = new AtomicLong();
+		this.batchesSent = new AtomicLong();
+	}
+
+	/**
+	 * Remember a public message, sent or received
+	 */
+	public synchronized void record(Entry entry) {
+		if(entries.size() >= CAPACITY) {
+			entries.removeFirst();
+		}
+		entries.addLast(entry);
+	}
+
+	/**
+	 * This node just joined, ask the next nodes heard for the history
+	 */
+	public synchronized void joined() {
+		askUntil = clock.millis() + ASK_WINDOW;
+		asked.clear();
+	}
+
+	/**
+	 * A binary node was heard, maybe it can be asked for the history
+	 */
+	public void peerHeard(InetAddress address) {
+		synchronized(this) {
+			if(clock.millis() > askUntil || asked.size() >= PEERS_TO_ASK || !asked.add(address)) {
+				return;
+			}
+		}
+		byte[] request = ByteBuffer.allocate(8).putInt(MAX_MESSAGES).putInt(MAX_AGE).array();
+		output.sendRequest(address, request);
+	}
+
+	/**
+	 * Answer a HISTORY_REQ, if it's within the bounds
+	 */
+	public synchronized void requested(Packet packet, InetAddress from) {
+		long now = clock.millis();
+		Iterator<Long> it = lastRequests.values().iterator();
+		while(it.hasNext()) {
+			if(now - it.next() > REQUEST_COOLDOWN) {
+				it.remove();
+			}
+		}
+		if(sessions.size() >= MAX_SESSIONS || lastRequests.containsKey(from) || packet.getContentLength() < 8) {
+			requestsRefused.incrementAndGet();
+			return;
+		}
+		lastRequests.put(from, now);
+
+		ByteBuffer request = ByteBuffer.wrap(packet.getContentData(), packet.getContentOffset(), 8);
+		int maxMessages = Math.min(MAX_MESSAGES, request.getInt());
+		long oldest = now - Math.min(MAX_AGE, request.getInt()) * 1000L;
+		ArrayDeque<Entry> answer = new ArrayDeque<>();
+		Iterator<Entry> newest = entries.descendingIterator();
+		while(newest.hasNext() && answer.size() < maxMessages) {
+			Entry entry = newest.next();
+			if(entry.timestamp < oldest) {
+				break;
+			}
+			answer.addFirst(entry);
+		}
+		if(answer.isEmpty()) {
+			return;
+		}
+
+		requestsServed.incrementAndGet();
+		Session session = new Session(from, new ArrayList<>(answer));
+		sessions.add(session);
+		session.timeout.schedule(BATCH_INTERVAL);
+	}
+
+	private void sendBatch(Session session) {
+		ByteBuffer batch = ByteBuffer.allocate(BATCH_BYTES);
+		while(session.next < session.entries.size()) {
+			ByteBuffer grown = put(batch, session.entries.get(session.next));
+			if(grown != batch && batch.position() > 0) {
+				break;
+			}
+			batch = grown;
+			session.next++;
+		}
+		batchesSent.incrementAndGet();
+		output.sendBatch(session.address, Arrays.copyOf(batch.array(), batch.position()));
+
+		synchronized(this) {
+			if(session.next < session.entries.size()) {
+				session.timeout.schedule(BATCH_INTERVAL);
+			}else {
+				sessions.remove(session);
+			}
+		}
+	}
+
+	/**
+	 * @return The same buffer with the entry appended, or a larger copy if it didn't fit
+	 */
+	private static ByteBuffer put(ByteBuffer buffer, Entry entry) {
+		byte[] name = entry.name != null ? entry.name.getBytes(StandardCharsets.UTF_8) : new byte[0];
+		byte[] text = entry.text.getBytes(StandardCharsets.UTF_8);
+		int nameLength = Math.min(name.length, 0xFF);
+		int textLength = Math.min(text.length, 0xFFFF);
+		int length = 27 + nameLength + textLength;
+		if(buffer.remaining() < length) {
+			ByteBuffer larger = ByteBuffer.allocate(buffer.position() + length);
+			larger.put(buffer.array(), 0, buffer.position());
+			buffer = larger;
+		}
+		buffer.put(entry.origin instanceof Inet4Address ? entry.origin.getAddress() : new byte[4]);
+		buffer.putLong(entry.sender);
+		buffer.putInt(entry.sequence);
+		buffer.putLong(entry.timestamp);
+		buffer.put((byte) nameLength);
+		buffer.put(name, 0, nameLength);
+		buffer.putShort((short) textLength);
+		buffer.put(text, 0, textLength);
+		return buffer;
+	}
+
+	/**
+	 * Read the content of a HISTORY packet
+	 * @return The entries, up to the first malformed one
+	 */
+	public static List<Entry> decode(byte[] data, int offset, int length) {
+		List<Entry> result = new ArrayList<>();
+		ByteBuffer buffer = ByteBuffer.wrap(data, offset, length);
+		while(buffer.remaining() >= 27) {
+			byte[] address = new byte[4];
+			buffer.get(address);
+			long sender = buffer.getLong();
+			int sequence = buffer.getInt();
+			long timestamp = buffer.getLong();
+			int nameLength = buffer.get() & 0xFF;
+			if(buffer.remaining() < nameLength + 2) {
+				break;
+			}
+			String name = new String(data, buffer.position(), nameLength, StandardCharsets.UTF_8);
+			buffer.position(buffer.position() + nameLength);
+			int textLength = buffer.getShort() & 0xFFFF;
+			if(buffer.remaining() < textLength) {
+				break;
+			}
+			String text = new String(data, buffer.position(), textLength, StandardCharsets.UTF_8);
+			buffer.position(buffer.position() + textLength);
+			try {
+				result.add(new Entry(InetAddress.getByAddress(address), name, text, timestamp, sender, sequence));
+			} catch (UnknownHostException e) {
+				break;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return Requests answered
+	 */
+	public long getRequestsServed() {
+		return requestsServed.get();
+	}
+
+	/**
+	 * @return Requests ignored for being over the bounds
+	 */
+	public long getRequestsRefused() {
+		return requestsRefused.get();
+	}
+
+	public long getBatchesSent() {
+		return batchesSent.get();
+	}
+}
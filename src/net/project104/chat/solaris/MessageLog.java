@@ -0,0 +1,223 @@
+/*	Solarys Chat - Local network UDP broadcaster chat
+ * 	Copyright 2018 Yeshe Santos García <civyshk@gmail.com>
+ *	
+ *	This file is part of Solarys Chat
+ *	
+ *	Solarys Chat is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.project104.chat.solaris;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * The messages of a Room, in the order they are shown. Appending is O(1)
+ * and never moves what's already stored: messages live in fixed size
+ * chunks, so the index of a message stays valid as the log grows.
+ *
+ * Whether a message has the same time, or the same author, as the one
+ * before it is worked out once when it's added, not on every render.
+ *
+ * Past messages received later are merged by timestamp, which renumbers
+ * the log; getGeneration() tells when that happened, and Cursors opened
+ * before refuse to go on. Not thread safe, like the Room.
+ */
+public class MessageLog {
+	public static final int CHUNK_BITS = 8;
+	public static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+	private static final byte SAME_TIME = 0x01;
+	private static final byte SAME_AUTHOR = 0x02;
+
+	/**
+	 * Reads a range of the log in order, without copying it
+	 */
+	public final class Cursor {
+		private final int expectedGeneration;
+		private final int end;
+		private int next;
+
+		private Cursor(int from, int to) {
+			this.expectedGeneration = generation;
+			this.next = from;
+			this.end = to;
+		}
+
+		public boolean hasNext() {
+			return next < Math.min(end, size);
+		}
+
+		public Message next() {
+			if(generation != expectedGeneration) {
+				throw new ConcurrentModificationException();
+			}
+			if(!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return get(next++);
+		}
+
+		/**
+		 * @return Index of the message last returned by next()
+		 */
+		public int index() {
+			return next - 1;
+		}
+
+		/**
+		 * @return true if the message last returned by next() has the
+		 * same hour and minute as the one before it
+		 */
+		public boolean isSameTime() {
+			return MessageLog.this.isSameTime(next - 1);
+		}
+
+		/**
+		 * @return true if the message last returned by next() has the
+		 * same author as the one before it
+		 */
+		public boolean isSameAuthor() {
+			return MessageLog.this.isSameAuthor(next - 1);
+		}
+	}
+
+	private Message[][] messages;
+	private byte[][] flags;
+	private int size;
+	private int generation;
+
+	public MessageLog() {
+		messages = new Message[4][];
+		flags = new byte[4][];
+	}
+
+	/**
+	 * @return The index of the message, valid until the next merge
+	 */
+	public int append(Message message) {
+		int chunk = size >>> CHUNK_BITS;
+		if(chunk == messages.length) {
+			messages = Arrays.copyOf(messages, chunk * 2);
+			flags = Arrays.copyOf(flags, chunk * 2);
+		}
+		if(messages[chunk] == null) {
+			messages[chunk] = new Message[CHUNK_SIZE];
+			flags[chunk] = new byte[CHUNK_SIZE];
+		}
+		messages[chunk][size & CHUNK_MASK] = message;
+		flags[chunk][size & CHUNK_MASK] = size > 0 ? compare(get(size - 1), message) : 0;
+		return size++;
+	}
+
+	private static byte compare(Message previous, Message message) {
+		byte result = 0;
+		if(previous.getHour() == message.getHour() && previous.getMinute() == message.getMinute()) {
+			result |= SAME_TIME;
+		}
+		if(previous.getOrigin() == message.getOrigin()) {
+			result |= SAME_AUTHOR;
+		}
+		return result;
+	}
+
+	/**
+	 * Put older messages in their place by timestamp. Those already in
+	 * the log keep their relative order, and go first on equal timestamps.
+	 * Every index changes, so it's O(n)
+	 */
+	public void merge(List<Message> older) {
+		if(older.isEmpty()) {
+			return;
+		}
+		List<Message> sorted = new ArrayList<>(older);
+		sorted.sort(Comparator.comparingLong(Message::getTimestamp));
+		Message[][] oldMessages = messages;
+		int oldSize = size;
+		int chunks = Math.max(4, Integer.highestOneBit(((oldSize + sorted.size()) >>> CHUNK_BITS) + 1) * 2);
+		messages = new Message[chunks][];
+		flags = new byte[chunks][];
+		size = 0;
+		generation++;
+
+		int i = 0;
+		int j = 0;
+		while(i < oldSize || j < sorted.size()) {
+			Message old = i < oldSize ? oldMessages[i >>> CHUNK_BITS][i & CHUNK_MASK] : null;
+			if(j == sorted.size() || (old != null && old.getTimestamp() <= sorted.get(j).getTimestamp())) {
+				append(old);
+				i++;
+			}else {
+				append(sorted.get(j++));
+			}
+		}
+	}
+
+	public Message get(int index) {
+		checkIndex(index);
+		return messages[index >>> CHUNK_BITS][index & CHUNK_MASK];
+	}
+
+	/**
+	 * @return true if the message has the same hour and minute as the one before it
+	 */
+	public boolean isSameTime(int index) {
+		checkIndex(index);
+		return (flags[index >>> CHUNK_BITS][index & CHUNK_MASK] & SAME_TIME) != 0;
+	}
+
+	/**
+	 * @return true if the message has the same author as the one before it
+	 */
+	public boolean isSameAuthor(int index) {
+		checkIndex(index);
+		return (flags[index >>> CHUNK_BITS][index & CHUNK_MASK] & SAME_AUTHOR) != 0;
+	}
+
+	private void checkIndex(int index) {
+		if(index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return A number which changes whenever indices do, on merge()
+	 */
+	public int getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * @return A Cursor from the given index to the end, including
+	 * messages appended while reading
+	 */
+	public Cursor cursor(int from) {
+		return cursor(from, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @param to Index after the last message to read
+	 */
+	public Cursor cursor(int from, int to) {
+		return new Cursor(Math.max(0, from), to);
+	}
+}
@@ -0,0 +1,42 @@
+/*	Solarys Chat - Local network UDP broadcaster chat
+ * 	Copyright 2018 Yeshe Santos García <civyshk@gmail.com>
+ *	
+ *	This file is part of Solarys Chat
+ *	
+ *	Solarys Chat is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.project104.chat.solaris;
+
+import java.net.InetAddress;
+import java.util.List;
+
+/**
+ * What the Model tells about its changes. Presenter shows them in the
+ * GUI; headless nodes, like those of the simulator, may just count them
+ */
+public interface ModelListener {
+	public void showBroadcasts(List<InetAddress> broadcasts);
+	public void roomAvailable(Room room);
+	public void userEnteredRoom(Node node, Room room);
+	public void userChangedName(Node node, String oldName);
+	public void roomChangedName(Room room);
+	public void userLeft(Node node);
+	public void roomReceivedMessage(Message message, Room room);
+	public void roomReceivedHistory(Room room);
+	/**
+	 * A message of this node was too large to be sent, and was dropped
+	 */
+	public void roomMessageTooLarge(Room room);
+}
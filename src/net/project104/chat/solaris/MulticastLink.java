@@ -0,0 +1,144 @@
+/*	Solarys Chat - Local network UDP broadcaster chat
+ * 	Copyright 2018 Yeshe Santos García <civyshk@gmail.com>
+ *	
+ *	This file is part of Solarys Chat
+ *	
+ *	Solarys Chat is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.project104.chat.solaris;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.MembershipKey;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Membership of a multicast group on one local interface. Packets for
+ * the group are received by the channel which joined it, and sent
+ * through a socket of our own pinned to the interface
+ */
+public class MulticastLink {
+	private final NetworkInterface networkInterface;
+	private final InetAddress group;
+	private final MembershipKey membership;
+	private final DatagramChannel channel;
+
+	private final AtomicLong packetsSent;
+	private final AtomicLong bytesSent;
+	private final AtomicLong errors;
+
+	/**
+	 * Join the group on an interface
+	 * @param receiver The bound channel which is going to receive the group packets
+	 * @param networkInterface The interface to join the group on
+	 * @param group An IPv4 multicast address
+	 * @param ttl Hops the sent packets can travel, 1 keeps them inside the local network
+	 * @throws IOException If the group can't be joined on this interface
+	 */
+	public MulticastLink(DatagramChannel receiver, NetworkInterface networkInterface, InetAddress group, int ttl) throws IOException {
+		this.networkInterface = networkInterface;
+		this.group = group;
+		this.membership = receiver.join(group, networkInterface);
+
+		DatagramChannel channel = DatagramChannel.open(StandardProtocolFamily.INET);
+		try {
+			channel.setOption(StandardSocketOptions.IP_MULTICAST_IF, networkInterface);
+			channel.setOption(StandardSocketOptions.IP_MULTICAST_TTL, ttl);
+			channel.configureBlocking(false);
+		}catch(IOException e) {
+			channel.close();
+			membership.drop();
+			throw e;
+		}
+		this.channel = channel;
+		this.packetsSent = new AtomicLong();
+		this.bytesSent = new AtomicLong();
+		this.errors = new AtomicLong();
+	}
+
+	/**
+	 * @param names Names of the interfaces to use, or empty to use all of them
+	 * @return Interfaces which are up, not loopback, support multicast and have an IPv4 address
+	 */
+	public static List<NetworkInterface> getMulticastInterfaces(Collection<String> names) {
+		return NetworkSnapshot.scan().getMulticastInterfaces(names);
+	}
+
+	public NetworkInterface getNetworkInterface() {
+		return networkInterface;
+	}
+
+	public InetAddress getGroup() {
+		return group;
+	}
+
+	/**
+	 * Send the remaining bytes of the buffer to the group, through this interface
+	 * @return true if the datagram was handed to the system
+	 */
+	public boolean send(ByteBuffer data, int port) {
+		int length = data.remaining();
+		try {
+			if(channel.send(data, new InetSocketAddress(group, port)) == length) {
+				packetsSent.incrementAndGet();
+				bytesSent.addAndGet(length);
+				return true;
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		errors.incrementAndGet();
+		return false;
+	}
+
+	/**
+	 * Leave the group and close the sending socket
+	 */
+	public void close() {
+		membership.drop();
+		try {
+			channel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	public long getPacketsSent() {
+		return packetsSent.get();
+	}
+
+	public long getBytesSent() {
+		return bytesSent.get();
+	}
+
+	public long getErrors() {
+		return errors.get();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s -> %s (sent %d packets, %d bytes, %d errors)",
+				networkInterface.getName(), group.getHostAddress(),
+				getPacketsSent(), getBytesSent(), getErrors());
+	}
+}
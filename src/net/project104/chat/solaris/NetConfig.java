@@ -0,0 +1,407 @@
+/*	Solarys Chat - Local network UDP broadcaster chat
+ * 	Copyright 2018 Yeshe Santos García <civyshk@gmail.com>
+ *	
+ *	This file is part of Solarys Chat
+ *	
+ *	Solarys Chat is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.project104.chat.solaris;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tunables of the network layer. Defaults can be overridden with
+ * system properties, e.g. java -Dsolarys.wire=text -jar solaryschat.jar
+ *
+ * <pre>
+ * solarys.wire       text | binary
+ * solarys.send       best | fan_out
+ * solarys.transport  broadcast | multicast
+ * solarys.group      multicast group address
+ * solarys.ttl        multicast ttl
+ * solarys.interfaces comma separated interface names for multicast
+ * solarys.coalesce   milliseconds packets wait to be packed together, 0 to disable
+ * solarys.mtu        largest IP packet the network carries, 0 to ask the interfaces
+ * solarys.reliable   true | false, acknowledge and retransmit private messages
+ * solarys.compress   shortest message content to compress, 0 to disable
+ * solarys.queue      most datagrams waiting to be sent
+ * solarys.burst      packets any node may send at once
+ * solarys.rate       packets per second any node may keep sending, 0 for no limit
+ * solarys.watch      milliseconds between looks for network changes, 0 to disable
+ * solarys.shards     receiving sockets and threads, more than 1 needs SO_REUSEPORT
+ * solarys.batch      most datagrams read from a socket in one go
+ * solarys.threads    platform | virtual | inline, where background work runs
+ * </pre>
+ *
+ * The clock, scheduler and random source have no property, they are
+ * set by simulations to run the network layer in virtual time.
+ */
+public class NetConfig {
+	public enum WireFormat {
+		/** The original one line text packets, understood by old clients */
+		TEXT,
+		/** Compact binary packets, see BinaryCodec */
+		BINARY
+	}
+
+	public enum SendMode {
+		/** Public packets go to the broadcast address chosen by the user, or the best looking one */
+		BEST,
+		/** Public packets go to every broadcast domain of this host, each one through its own socket */
+		FAN_OUT
+	}
+
+	public enum Transport {
+		/** Public packets are sent to subnet broadcast addresses, see SendMode */
+		BROADCAST,
+		/** Public packets are sent to a multicast group, joined on every selected interface */
+		MULTICAST
+	}
+
+	public enum Threads {
+		/** A fixed pool of platform threads, one per processor */
+		PLATFORM,
+		/** A virtual thread per task, needs Java 21 */
+		VIRTUAL,
+		/** On the thread which hands the work over, for tests and simulations */
+		INLINE
+	}
+
+	public static final String DEFAULT_MULTICAST_GROUP = "239.255.41.31";
+	public static final int DEFAULT_MTU = 1500;
+	public static final int MIN_MTU = 576;
+	/** IPv4 and UDP headers */
+	public static final int HEADERS_LENGTH = 28;
+
+	private WireFormat wireFormat;
+	private SendMode sendMode;
+	private Transport transport;
+	private String multicastGroup;
+	private int multicastTtl;
+	private List<String> multicastInterfaces;
+	private int coalesceWindow;
+	private int mtu;
+	private boolean reliableUnicast;
+	private int compressThreshold;
+	private int sendQueue;
+	private int rateBurst;
+	private int rateLimit;
+	private int watchInterval;
+	private int receiveShards;
+	private int receiveBatch;
+	private Threads threads;
+	private Clock clock;
+	private Scheduler scheduler;
+	private Random random;
+
+	public NetConfig() {
+		wireFormat = WireFormat.BINARY;
+		sendMode = SendMode.BEST;
+		transport = Transport.BROADCAST;
+		multicastGroup = DEFAULT_MULTICAST_GROUP;
+		multicastTtl = 1;
+		multicastInterfaces = new ArrayList<>();
+		coalesceWindow = 10;
+		mtu = 0;
+		reliableUnicast = true;
+		compressThreshold = Compressor.DEFAULT_THRESHOLD;
+		sendQueue = Sender.DEFAULT_CAPACITY;
+		rateBurst = RateLimiter.DEFAULT_BURST;
+		rateLimit = RateLimiter.DEFAULT_RATE;
+		watchInterval = (int) NetworkWatcher.DEFAULT_INTERVAL;
+		receiveShards = 1;
+		receiveBatch = Receiver.DEFAULT_BATCH;
+		threads = Threads.PLATFORM;
+		clock = Clock.SYSTEM;
+	}
+
+	/**
+	 * @return A configuration with defaults overridden by any solarys.* system property
+	 */
+	public static NetConfig fromSystemProperties() {
+		NetConfig config = new NetConfig();
+		config.setWireFormat(getEnumProperty("solarys.wire", WireFormat.class, config.getWireFormat()));
+		config.setSendMode(getEnumProperty("solarys.send", SendMode.class, config.getSendMode()));
+		config.setTransport(getEnumProperty("solarys.transport", Transport.class, config.getTransport()));
+		config.setMulticastGroup(System.getProperty("solarys.group", config.getMulticastGroup()));
+		config.setMulticastTtl(getIntProperty("solarys.ttl", config.getMulticastTtl()));
+		config.setCoalesceWindow(getIntProperty("solarys.coalesce", config.getCoalesceWindow()));
+		config.setMtu(getIntProperty("solarys.mtu", config.getMtu()));
+		config.setReliableUnicast(Boolean.parseBoolean(System.getProperty("solarys.reliable", String.valueOf(config.isReliableUnicast()))));
+		config.setCompressThreshold(getIntProperty("solarys.compress", config.getCompressThreshold()));
+		config.setSendQueue(getIntProperty("solarys.queue", config.getSendQueue()));
+		config.setRateBurst(getIntProperty("solarys.burst", config.getRateBurst()));
+		config.setRateLimit(getIntProperty("solarys.rate", config.getRateLimit()));
+		config.setWatchInterval(getIntProperty("solarys.watch", config.getWatchInterval()));
+		config.setReceiveShards(getIntProperty("solarys.shards", config.getReceiveShards()));
+		config.setReceiveBatch(getIntProperty("solarys.batch", config.getReceiveBatch()));
+		config.setThreads(getEnumProperty("solarys.threads", Threads.class, config.getThreads()));
+		String interfaces = System.getProperty("solarys.interfaces");
+		if(interfaces != null) {
+			for(String name : interfaces.split(",")) {
+				if(!name.trim().isEmpty()) {
+					config.getMulticastInterfaces().add(name.trim());
+				}
+			}
+		}
+		return config;
+	}
+
+	private static <E extends Enum<E>> E getEnumProperty(String key, Class<E> type, E defaultValue) {
+		String value = System.getProperty(key);
+		if(value == null) {
+			return defaultValue;
+		}
+		try {
+			return Enum.valueOf(type, value.trim().toUpperCase().replace('-', '_'));
+		}catch(IllegalArgumentException e) {
+			System.err.println(String.format("Unknown value for %s: %s", key, value));
+			return defaultValue;
+		}
+	}
+
+	private static int getIntProperty(String key, int defaultValue) {
+		String value = System.getProperty(key);
+		if(value == null) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value.trim());
+		}catch(NumberFormatException e) {
+			System.err.println(String.format("Bad number for %s: %s", key, value));
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * @return The format used for outgoing packets. Incoming packets are
+	 * accepted in any format
+	 */
+	public WireFormat getWireFormat() {
+		return wireFormat;
+	}
+
+	public void setWireFormat(WireFormat wireFormat) {
+		this.wireFormat = wireFormat;
+	}
+
+	public SendMode getSendMode() {
+		return sendMode;
+	}
+
+	public void setSendMode(SendMode sendMode) {
+		this.sendMode = sendMode;
+	}
+
+	public Transport getTransport() {
+		return transport;
+	}
+
+	public void setTransport(Transport transport) {
+		this.transport = transport;
+	}
+
+	public String getMulticastGroup() {
+		return multicastGroup;
+	}
+
+	public void setMulticastGroup(String multicastGroup) {
+		this.multicastGroup = multicastGroup;
+	}
+
+	/**
+	 * @return Hops multicast packets can travel. 1 keeps them inside the local network
+	 */
+	public int getMulticastTtl() {
+		return multicastTtl;
+	}
+
+	public void setMulticastTtl(int multicastTtl) {
+		this.multicastTtl = multicastTtl;
+	}
+
+	/**
+	 * @return Names of the interfaces to join the multicast group on.
+	 * If empty, every suitable interface is used
+	 */
+	public List<String> getMulticastInterfaces() {
+		return multicastInterfaces;
+	}
+
+	/**
+	 * @return Milliseconds a binary packet may wait to be packed with
+	 * others going to the same destination. 0 sends every packet alone
+	 */
+	public int getCoalesceWindow() {
+		return coalesceWindow;
+	}
+
+	public void setCoalesceWindow(int coalesceWindow) {
+		this.coalesceWindow = coalesceWindow;
+	}
+
+	/**
+	 * @return The MTU to split packets for, or 0 if it is to be discovered
+	 * from the network interfaces
+	 */
+	public int getMtu() {
+		return mtu;
+	}
+
+	public void setMtu(int mtu) {
+		this.mtu = mtu;
+	}
+
+	/**
+	 * @return true if private messages are sent through Reliability.
+	 * Only possible with the binary wire format
+	 */
+	public boolean isReliableUnicast() {
+		return reliableUnicast;
+	}
+
+	public void setReliableUnicast(boolean reliableUnicast) {
+		this.reliableUnicast = reliableUnicast;
+	}
+
+	/**
+	 * @return Shortest message content worth compressing, or 0 if messages
+	 * are never compressed. Only possible with the binary wire format
+	 */
+	public int getCompressThreshold() {
+		return compressThreshold;
+	}
+
+	public void setCompressThreshold(int compressThreshold) {
+		this.compressThreshold = compressThreshold;
+	}
+
+	/**
+	 * @return Capacity of the Sender queue. Datagrams beyond it are dropped
+	 */
+	public int getSendQueue() {
+		return sendQueue;
+	}
+
+	public void setSendQueue(int sendQueue) {
+		this.sendQueue = sendQueue;
+	}
+
+	/**
+	 * @return Packets a node may send in a burst, before being limited
+	 */
+	public int getRateBurst() {
+		return rateBurst;
+	}
+
+	public void setRateBurst(int rateBurst) {
+		this.rateBurst = rateBurst;
+	}
+
+	/**
+	 * @return Packets per second a node may keep sending, or 0 if
+	 * received packets are not limited
+	 */
+	public int getRateLimit() {
+		return rateLimit;
+	}
+
+	public void setRateLimit(int rateLimit) {
+		this.rateLimit = rateLimit;
+	}
+
+	/**
+	 * @return Milliseconds between looks at the network interfaces, 0 if they're not watched
+	 */
+	public int getWatchInterval() {
+		return watchInterval;
+	}
+
+	public void setWatchInterval(int watchInterval) {
+		this.watchInterval = watchInterval;
+	}
+
+	/**
+	 * @return Sockets listening at the port, each one drained by its own
+	 * thread. Only the first one receives broadcast and multicast, the
+	 * others share the unicast traffic. Either wire format may use several
+	 */
+	public int getReceiveShards() {
+		return receiveShards;
+	}
+
+	public void setReceiveShards(int receiveShards) {
+		this.receiveShards = receiveShards;
+	}
+
+	/**
+	 * @return Most datagrams read from a socket on each wakeup and handed
+	 * over together
+	 */
+	public int getReceiveBatch() {
+		return receiveBatch;
+	}
+
+	public void setReceiveBatch(int receiveBatch) {
+		this.receiveBatch = receiveBatch;
+	}
+
+	/**
+	 * @return Where work which may block runs, see Workers
+	 */
+	public Threads getThreads() {
+		return threads;
+	}
+
+	public void setThreads(Threads threads) {
+		this.threads = threads;
+	}
+
+	public Clock getClock() {
+		return clock;
+	}
+
+	public void setClock(Clock clock) {
+		this.clock = clock;
+	}
+
+	/**
+	 * @return What runs every timer, or null for a TimerWheel of each
+	 * NetManager. When set, the NetManager starts no thread at all: the
+	 * Sender and the EventLoop work on the threads which call them, so
+	 * that a simulator can drive everything from a single thread
+	 */
+	public Scheduler getScheduler() {
+		return scheduler;
+	}
+
+	public void setScheduler(Scheduler scheduler) {
+		this.scheduler = scheduler;
+	}
+
+	/**
+	 * @return Where tokens and jitters come from, or null for a new
+	 * Random for each NetManager
+	 */
+	public Random getRandom() {
+		return random;
+	}
+
+	public void setRandom(Random random) {
+		this.random = random;
+	}
+}
@@ -1,468 +1,1012 @@
-/*	Solarys Chat - Local network UDP broadcaster chat
- * 	Copyright 2018 Yeshe Santos García <civyshk@gmail.com>
- *	
- *	This file is part of Solarys Chat
- *	
- *	Solarys Chat is free software: you can redistribute it and/or modify
- *  it under the terms of the GNU General Public License as published by
- *  the Free Software Foundation, either version 3 of the License, or
- *  any later version.
- *
- *  This program is distributed in the hope that it will be useful,
- *  but WITHOUT ANY WARRANTY; without even the implied warranty of
- *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
- *  GNU General Public License for more details.
- *
- *  You should have received a copy of the GNU General Public License
- *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
- */
-
-package net.project104.chat.solaris;
-
-import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.InetAddress;
-import java.net.InterfaceAddress;
-import java.net.NetworkInterface;
-import java.net.SocketException;
-import java.net.SocketTimeoutException;
-import java.net.UnknownHostException;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Enumeration;
-import java.util.Iterator;
-import java.util.List;
-
-/**
- * Protocol messages, case sensitive:
- * JOIN  NAME={name} //Used both for announcing as a client and to rename itself
- * LEAVE CONTENT={bye message}
- * MSG   PUBLIC={TRUE|FALSE} AUTODELETE={seconds} CONTENT={message from user}
- *
- * This class manages the sending and receiving of messages 
- * between clients in the same network, using connectionless
- * UDP packets
- * 
- * JOIN -> (NAME=name)
- *      <- HELLO (NAME=name)
- *      
- * MSG <-> (PUBLIC=TRUE|FALSE AUTODELETE=ms CONTENT=content)
- * LEAVE <-> (CONTENT=content)
- * 
- * JOIN <- 
- *      -> HELLO 
- *           
- * @author civyshk
- * @version 20180315
- */
-public class NetManager {
-	public static final int DEFAULT_PORT = 41315;
-
-	private ArrayList<InetAddress> broadcasts = new ArrayList<InetAddress>();
-	private InetAddress broadcast = null;
-	
-	private Model model;
-	private Node selfNode;
-	private Server server;
-	private DatagramSocket socket;
-	
-	private final String mySigning;
-	
-	public NetManager(Model model, String userName) {
-		this.model = model;
-		this.server = null;
-		try {
-			socket = new DatagramSocket();
-		} catch (SocketException e) {
-			// TODO let caller know
-			e.printStackTrace();
-		}
-
-		if(userName != null) {
-			selfNode = new Node(getLocalAddress(), userName);
-		}else {
-			selfNode = new Node(getLocalAddress());
-		}
-		
-		mySigning = String.valueOf(Math.random());
-	}
-	
-	public InetAddress getBroadcastAddress() {
-		if(broadcast == null) {
-			return getBestBroadcastAddress();
-		}else {
-			return broadcast;
-		}
-	}
-	
-	public List<InetAddress> getBroadcasts(){
-		if(broadcasts.isEmpty()) {
-			generateBroadcasts();			
-		}
-		return broadcasts;
-	}
-	
-	/**
-	 * Try to return the best looking broadcast address, according
-	 * to similarity to the ip address of the local node
-	 * @return The best broadcast address it finds
-	 */
-	private InetAddress getBestBroadcastAddress() {
-		if(broadcasts.isEmpty()) {
-			generateBroadcasts();
-		}
-		
-		if(broadcasts.isEmpty()) {
-			return broadcasts.get(0);
-		}
-		
-		return null;
-	}
-	
-	/* 
-	 * Taken from 
-	 * https://stackoverflow.com/questions/4887675/detecting-all-available-networks-broadcast-addresses-in-java
-	 */
-	private void generateBroadcasts() {
-		broadcasts.clear();
-	    Enumeration<NetworkInterface> ifaces;
-	    try {
-	        ifaces = NetworkInterface.getNetworkInterfaces();
-	
-	        while(ifaces.hasMoreElements()) {
-	            NetworkInterface iface = (NetworkInterface) ifaces.nextElement();
-	
-	            if(iface == null) continue;
-	
-	            if(!iface.isLoopback() && iface.isUp()) {
-	                //System.out.println("Found non-loopback, up interface:" + iface);
-	
-	                Iterator<InterfaceAddress> it = iface.getInterfaceAddresses().iterator();
-	                while (it.hasNext()) {
-	                    InterfaceAddress address = it.next();
-	                    //System.out.println("Found address: " + address);
-	                    if(address == null) continue;
-	                    InetAddress broadcast = address.getBroadcast();
-	                    if(broadcast != null) {
-	                        broadcasts.add(broadcast);
-	                    }
-	                }
-	            }
-	        }
-	    } catch (SocketException ex) {
-	        System.err.println("Error while getting network interfaces");
-	        ex.printStackTrace();
-	    }
-
-		if(!broadcasts.isEmpty()) {		    
-			InetAddress bestAddress = broadcasts.get(0);
-			int bestScore = 0;
-			byte[] localBytes = selfNode.getAddress().getAddress();
-			
-			for(InetAddress address : broadcasts) {
-				byte[] bytes = address.getAddress();
-				if(bytes.length == localBytes.length) {
-					int score = 0;
-					for(int i = 0; i < bytes.length; ++i) {
-						score += (bytes[i] == localBytes[i]) ? 1 : 0;
-					}
-					if(score > bestScore){
-						bestAddress = address;
-						bestScore = score;
-					}
-				}
-			}
-			
-			broadcasts.remove(bestAddress);
-			broadcasts.add(0, bestAddress);
-		}
-	}
-	
-	/**
-	 * Sends a broadcast message to let every listening node
-	 * know that we are online
-	 */
-	public void join() {
-		selfNode.join();
-		InetAddress address = getBroadcastAddress();
-		if(address != null) {
-			sendJoin(address);
-		}else {
-			System.err.println("Error, can't obtain a broadcast address");
-		}
-	}
-	
-	public void leave() {
-		selfNode.leave();
-		throw new UnsupportedOperationException("Not implemented");
-	}
-	
-	public void startServer() {
-		stopServer();		
-		try {
-			server = new Server(DEFAULT_PORT);
-			server.start();
-		}catch(SocketException e) {
-			//TODO let caller know this
-			e.printStackTrace();
-		}
-	}
-	
-	public void stopServer() {
-		if(server != null) {
-			server.stopServer();
-		}
-	}
-	
-	private void received(String command, InetAddress from) {
-		if(getSelfNode().getAddress().equals(from)) {
-			return;
-		}
-		
-		String[] tokens = command.split(" ", 3);
-		if(tokens.length != 3) {
-			System.err.println("Received command with erroneous length: " + tokens.length);
-			return;
-		}else if(tokens[0].equals(mySigning)) {
-			//message from this same node. Happens with some broadcast addresses
-			System.err.println(String.format("Received %s command from this same node. Skip", tokens[1]));
-			return;
-		}		
-		
-		switch(tokens[1]) {
-			case "MSG":   receivedMsg  (tokens[2], from); break;
-			case "JOIN":  receivedJoin (tokens[2], from); break;
-			case "LEAVE": receivedLeave(tokens[2], from); break;
-			case "HELLO": receivedHello(tokens[2], from); break;
-			default: System.err.println("Received bad command: " + tokens[1]);; break;				
-		}
-	}
-	
-	private void receivedMsg(String command, InetAddress address) {
-		String[] tokens = command.split(" ", 3);
-		if(tokens.length != 3){
-			System.err.println(String.format("Received bad message with %d fields", tokens.length));
-			return;
-		}
-		boolean isPublic = false;
-		int autoDelete = -1;
-		String content = "";
-		for(String token : tokens) {
-			String[] keyValuePair = token.split("=", 2);
-			if(keyValuePair.length != 2) {
-				continue;
-			}			
-			switch(keyValuePair[0]) {
-				case "PUBLIC":     isPublic = "TRUE".equals(keyValuePair[1]); break;
-				case "AUTODELETE": autoDelete = Integer.valueOf(keyValuePair[1]);
-				case "CONTENT":    content = keyValuePair[1].trim();
-				default: break;
-			}
-		}
-		
-		model.receivedMessage(address, content, autoDelete, isPublic);
-	}
-
-	private void receivedJoin(String command, InetAddress address) {
-		String name = "";
-		String[] keyValuePair = command.split("=", 2);
-		if(keyValuePair.length == 2) {
-			if(keyValuePair[0].equals("NAME")) {
-				name = keyValuePair[1].trim();
-			}
-		}
-		model.nodeJoined(address, name);
-	}
-
-	private void receivedLeave(String command, InetAddress address) {		
-		String content = "";
-		String[] keyValuePair = command.split("=", 2);
-		if(keyValuePair.length == 2) {
-			if(keyValuePair[0].equals("CONTENT")) {
-				content = keyValuePair[1].trim();
-			}
-		}
-		model.nodeLeft(address, content);
-	}
-
-	private void receivedHello(String command, InetAddress address) {
-		String name = "";
-		String[] keyValuePair = command.split("=", 2);
-		if(keyValuePair.length == 2) {
-			if(keyValuePair[0].equals("NAME")) {
-				name = keyValuePair[1].trim();
-			}
-		}
-		model.nodeSaidHello(address, name);
-	}
-	
-	/**
-	 * Create and send a Message
-	 * @param text The message
-	 * @param destination Node to send the private message or null if the message is public
-	 * @return The created and sent message
-	 */
-	public Message sendMessage(String text, Node destination) {
-		if(destination != null) {
-			return sendMessage(text, destination.getAddress(), false);
-		}else {			
-			return sendMessage(text, getBroadcastAddress(), true);
-		}		
-	}
-	
-	private String getSignedCommand(String command) {
-		return mySigning + " " + command;
-	}
-	
-	private Message sendMessage(String text, InetAddress address, boolean isPublic) {
-		String command = getSignedCommand(String.format("MSG PUBLIC=%s AUTODELETE=%d CONTENT=%s",
-				isPublic?"TRUE":"FALSE", -1, text));
-        try {
-        	byte[] buffer = command.getBytes("UTF-8");
-        	DatagramPacket packet = new DatagramPacket(buffer, buffer.length, address, DEFAULT_PORT);
-			socket.send(packet);
-			return new Message(text, selfNode, System.currentTimeMillis());
-		} catch (IOException e) {
-			// TODO let caller know this
-			e.printStackTrace();
-			return null;
-		}
-	}
-	
-	public void sendJoin(InetAddress address) {
-		String command = String.format("JOIN NAME=%s", selfNode.getName() != null ? selfNode.getName() : selfNode.getDisplayName());
-		sendPacket(command, address);
-	}
-
-	public void sendLeave(InetAddress address, String content) {
-		String command = String.format("LEAVE CONTENT=%s", content);
-	    sendPacket(command, address);
-	}
-	
-	public void sendHello(InetAddress address) {
-		String command = String.format("HELLO NAME=%s", selfNode.getName() != null ? selfNode.getName() : selfNode.getDisplayName());
-		sendPacket(command, address);
-	}
-	
-	private void sendPacket(String command, InetAddress address) {
-		byte[] buffer = getSignedCommand(command).getBytes();
-		DatagramPacket packet = new DatagramPacket(buffer, buffer.length, address, DEFAULT_PORT);
-		try {
-			socket.send(packet);
-		} catch (IOException e) {
-			// TODO let caller know this
-			e.printStackTrace();
-		}
-	}
-	
-	/**
-	 * Launches a thread which accepts incoming messages and redirects 
-	 * them to father NetManager class
-	 * @author civyshk
-	 * @created 20180320
-	 */
-	private class Server extends Thread{
-		private DatagramSocket serverSocket;
-		private boolean running;
-		private byte[] buffer;
-		
-		public Server(int port) throws SocketException {
-			try {
-				serverSocket = new DatagramSocket(port);
-				serverSocket.setSoTimeout(10000);
-				buffer = new byte[2000];
-			} catch (SocketException e) {
-				throw e;
-			}
-		}
-		
-		public void stopServer() {
-			running = false;
-			
-			//Try to unblock serverSocket to quit faster
-			try {
-				InetAddress address = InetAddress.getLocalHost();
-				byte[] stop = "STOP".getBytes();
-				DatagramPacket packet = new DatagramPacket(stop, stop.length, address, serverSocket.getLocalPort());
-				serverSocket.send(packet);
-			} catch (UnknownHostException e) {
-				e.printStackTrace();
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
-		}
-		
-		@Override
-		public void run() {
-			running = true;
-			
-			while(running) {
-				DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
-	            try {
-					serverSocket.receive(packet);
-	            } catch(SocketTimeoutException e) {
-	            	continue;
-				} catch (IOException e) {
-					//TODO avisar a alguien
-					e.printStackTrace();
-					running = false;
-				}
-	            
-	            InetAddress address = packet.getAddress();
-	            String received;
-	            try {
-	            	received = new String(packet.getData(), 0, packet.getLength(), "UTF-8");
-		        }catch(Exception e) {
-		        	received = new String(packet.getData(), 0, packet.getLength());
-		        }
-
-	            NetManager.this.received(received, address);
-	                         
-	            if (address.isLoopbackAddress() && received.equals("STOP")) {
-	                running = false;
-	                continue;
-	            
-	            }
-	        }
-	        serverSocket.close();
-		}		
-	}
-
-	public Node getSelfNode() {
-		return selfNode;
-	}
-
-	/* 
-	 * copied from 
-	 * https://stackoverflow.com/questions/9481865/getting-the-ip-address-of-the-current-machine-using-java 
-	 */
-	public static InetAddress getLocalAddress() {
-		try(final DatagramSocket socket = new DatagramSocket()){
-			socket.connect(InetAddress.getByName("8.8.8.8"), 10002);
-			return socket.getLocalAddress();
-		} catch (SocketException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		} catch (UnknownHostException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
-		return null;
-	}
-
-	public boolean isConnected() {
-		return server != null;
-	}
-
-	public void setBroadcastIP(String broadcast) {
-		try {
-			this.broadcast = InetAddress.getByName(broadcast);
-			this.join();
-		} catch (UnknownHostException e) {
-			e.printStackTrace();
-		}
-	}
-	
-	
-}
+/*	Solarys Chat - Local network UDP broadcaster chat
+ * 	Copyright 2018 Yeshe Santos García <civyshk@gmail.com>
+ *	
+ *	This file is part of Solarys Chat
+ *	
+ *	Solarys Chat is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.project104.chat.solaris;
+
+import java.awt.GraphicsEnvironment;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.project104.chat.solaris.NetConfig.WireFormat;
+
+/**
+ * Protocol messages:
+ * JOIN  NAME={name} //Used both for announcing as a client and to rename itself
+ * LEAVE CONTENT={bye message}
+ * MSG   PUBLIC={TRUE|FALSE} AUTODELETE={seconds} CONTENT={message from user}
+ *
+ * They travel either as text (TextCodec) or as binary packets (BinaryCodec),
+ * according to NetConfig. Both formats are always accepted when receiving
+ *
+ * This class manages the sending and receiving of messages 
+ * between clients in the same network, using connectionless
+ * UDP packets, or any other DatagramTransport
+ * 
+ * JOIN -> (NAME=name)
+ *      <- HELLO (NAME=name)
+ *      
+ * MSG <-> (PUBLIC=TRUE|FALSE AUTODELETE=ms CONTENT=content)
+ * LEAVE <-> (CONTENT=content)
+ * 
+ * JOIN <- 
+ *      -> HELLO 
+ *           
+ * @author civyshk
+ * @version 20180315
+ */
+public class NetManager {
+	public static final int DEFAULT_PORT = 41315;
+	/** Shortest time between two roster SUMMARY requests, in milliseconds */
+	public static final long MIN_SUMMARY_GAP = 1000;
+	/**
+	 * SUMMARY requests expected after a HEARTBEAT, whatever the number of
+	 * nodes disagreeing with its digest. Each one asks with this chance
+	 * out of the nodes it knows
+	 */
+	public static final int SUMMARY_ANSWERS = 2;
+	/** Most milliseconds a SUMMARY request waits, so that they don't all arrive at once */
+	public static final int SUMMARY_JITTER = 500;
+	/** ROSTER answers a node gets per second at most, as RateLimiter counts them */
+	public static final int ROSTER_ANSWER_RATE = 1;
+
+	private Model model;
+	private Node selfNode;
+	private final DatagramTransport transport;
+	
+	private final NetConfig config;
+	private final long myToken;
+	private final AtomicInteger nextSequence;
+	private final PacketCodec binaryCodec;
+	private final PacketCodec textCodec;
+	/** One per receiving thread of the transport */
+	private final List<Inbound> inbounds;
+	private final int maxDatagramSize;
+	private final AtomicInteger nextFragmentId;
+	private final Reassembler reassembler;
+	private final Sender sender;
+	private final Clock clock;
+	private final Scheduler timers;
+	/** The TimerWheel of this node, null if the timers run on a Scheduler of the config */
+	private final TimerWheel wheel;
+	private final Workers workers;
+	private final Reliability reliability;
+	private final Compressor compressor;
+	private final EventLoop events;
+	private final DuplicateFilter duplicates;
+	private final Presence presence;
+	private final Roster roster;
+	private final HelloScheduler helloScheduler;
+	private final History history;
+	/** Version of the name of this node, see Roster */
+	private volatile int selfVersion;
+	private volatile long lastSummary;
+	/** Sends a SUMMARY to summaryTarget, if it still disagrees with summaryDigest */
+	private final Scheduler.Timeout summaryTimer;
+	private InetAddress summaryTarget;
+	private byte[] summaryDigest;
+	/** Requesters answered with ROSTER pages lately, guarded by itself */
+	private final RateLimiter rosterAnswers;
+	private final Random random;
+	/** Peers which told they can inflate, and those which didn't */
+	private final Set<InetAddress> inflaters;
+	private final Set<InetAddress> legacyPeers;
+	
+	public NetManager(Model model, String userName) {
+		this(model, userName, new NetConfig());
+	}
+	
+	public NetManager(Model model, String userName, NetConfig config) {
+		this(model, userName, config, GraphicsEnvironment.isHeadless() ? EventLoop.INLINE : EventLoop.SWING);
+	}
+	
+	/**
+	 * @param dispatcher Where received events are applied to the Model
+	 */
+	public NetManager(Model model, String userName, NetConfig config, EventLoop.Dispatcher dispatcher) {
+		this(model, userName, config, dispatcher, NetworkSnapshot.scan());
+	}
+	
+	/**
+	 * @param network The interfaces of this host, which may be scanned
+	 * in the background with NetworkSnapshot.scanAsync()
+	 */
+	public NetManager(Model model, String userName, NetConfig config, EventLoop.Dispatcher dispatcher, NetworkSnapshot network) {
+		this(model, userName, config, dispatcher, new UdpTransport(config, network));
+	}
+	
+	/**
+	 * @param transport Where datagrams are sent and received, it's closed along with this
+	 */
+	public NetManager(Model model, String userName, NetConfig config, EventLoop.Dispatcher dispatcher, DatagramTransport transport) {
+		this.model = model;
+		this.config = config;
+		this.transport = transport;
+
+		if(userName != null) {
+			selfNode = new Node(transport.getLocalAddress(), userName);
+		}else {
+			selfNode = new Node(transport.getLocalAddress());
+		}
+		
+		clock = config.getClock();
+		random = config.getRandom() != null ? config.getRandom() : new Random();
+		myToken = random.nextLong();
+		nextSequence = new AtomicInteger();
+		binaryCodec = new BinaryCodec();
+		textCodec = new TextCodec(String.valueOf(random.nextDouble()), myToken);
+		nextFragmentId = new AtomicInteger();
+		int mtu = config.getMtu() > 0 ? config.getMtu() : transport.getMtu();
+		maxDatagramSize = Math.max(NetConfig.MIN_MTU, mtu) - NetConfig.HEADERS_LENGTH;
+		
+		//with a Scheduler of its own, the config is in charge of time and nothing runs on its own thread
+		if(config.getScheduler() != null) {
+			timers = config.getScheduler();
+			wheel = null;
+		}else {
+			wheel = new TimerWheel(clock, 10, 512);
+			wheel.start();
+			timers = wheel;
+		}
+		
+		Coalescer coalescer = null;
+		if(config.getWireFormat() == WireFormat.BINARY && config.getCoalesceWindow() > 0) {
+			coalescer = new Coalescer(this::transmit, config.getCoalesceWindow(), maxDatagramSize, clock);
+		}
+		if(wheel != null) {
+			sender = new Sender(this::transmit, config.getSendQueue(), coalescer, clock);
+			sender.start();
+		}else {
+			sender = new Sender(this::transmit, coalescer, clock, timers);
+		}
+		
+		workers = Workers.create(config.getThreads());
+		reassembler = new Reassembler(timers, 1 << 20);
+		compressor = new Compressor(config.getCompressThreshold());
+		inflaters = ConcurrentHashMap.newKeySet();
+		legacyPeers = ConcurrentHashMap.newKeySet();
+		duplicates = new DuplicateFilter(DuplicateFilter.DEFAULT_WINDOW, DuplicateFilter.DEFAULT_CAPACITY, clock);
+		inbounds = new CopyOnWriteArrayList<>();
+		roster = new Roster(clock);
+		summaryTimer = timers.newTimeout(this::sendPendingSummary);
+		rosterAnswers = new RateLimiter(1, ROSTER_ANSWER_RATE, RateLimiter.DEFAULT_CAPACITY, clock);
+		selfVersion = nextNameVersion();
+		if(wheel != null) {
+			events = new EventLoop(this::apply, dispatcher, EventLoop.DEFAULT_CAPACITY);
+			events.start();
+		}else {
+			events = new EventLoop(this::apply, dispatcher, EventLoop.INLINE_CAPACITY, true);
+		}
+		if(config.getWireFormat() == WireFormat.BINARY) {
+			presence = new Presence(timers, random, new Presence.Listener() {
+				@Override
+				public void sendHeartbeat(long interval) {
+					Packet packet = newPacket(Packet.HEARTBEAT, null);
+					packet.setFlags(Packet.FLAG_PUBLIC);
+					byte[] digest = roster.digest(selfNode.getAddress(), selfVersion);
+					byte[] content = ByteBuffer.allocate(digest.length + 4).put(digest).putInt((int) interval).array();
+					packet.setContent(content, 0, content.length);
+					send(packet, null, false);
+				}
+				
+				@Override
+				public void expired(InetAddress address) {
+					forgetPeer(address);
+					events.publish(Packet.LEAVE, address, null);
+				}
+			});
+			helloScheduler = new HelloScheduler(timers, random, new HelloScheduler.Output() {
+				@Override
+				public void sendRoster() {
+					for(byte[] content : roster.encode(selfNode.getAddress(), getSelfName(), selfVersion)) {
+						Packet packet = newPacket(Packet.ROSTER, null);
+						packet.setFlags(Packet.FLAG_PUBLIC);
+						packet.setContent(content, 0, content.length);
+						send(packet, null, false);
+					}
+				}
+				
+				@Override
+				public void sendHello(InetAddress address) {
+					NetManager.this.sendHello(address);
+				}
+			});
+			history = new History(timers, clock, workers, new History.Output() {
+				@Override
+				public void sendRequest(InetAddress address, byte[] content) {
+					Packet packet = newPacket(Packet.HISTORY_REQ, null);
+					packet.setContent(content, 0, content.length);
+					send(packet, address, false);
+				}
+				
+				@Override
+				public void sendBatch(InetAddress address, byte[] content) {
+					Packet packet = newPacket(Packet.HISTORY, null);
+					packet.setContent(content, 0, content.length);
+					compress(packet, address);
+					send(packet, address, false);
+				}
+			});
+		}else {
+			presence = null;
+			helloScheduler = null;
+			history = null;
+		}
+		if(config.getWireFormat() == WireFormat.BINARY && config.isReliableUnicast()) {
+			reliability = new Reliability(new Reliability.Link() {
+				@Override
+				public void transmit(ByteBuffer packet, InetAddress destination) {
+					NetManager.this.send(packet, destination, false);
+				}
+				
+				@Override
+				public void sendAck(InetAddress destination, int sequence) {
+					Packet ack = newPacket(Packet.ACK, null);
+					ack.setReliableSequence(sequence);
+					send(ack, destination, false);
+				}
+				
+				@Override
+				public void deliver(Packet packet, InetAddress from) {
+					receivedMsg(packet, from);
+				}
+			}, binaryCodec, timers, clock);
+		}else {
+			reliability = null;
+		}
+		transport.open(new DatagramTransport.Listener() {
+			@Override
+			public Receiver.Listener newShard() {
+				Inbound inbound = new Inbound(new RateLimiter(config.getRateBurst(), config.getRateLimit(), RateLimiter.DEFAULT_CAPACITY, clock));
+				inbounds.add(inbound);
+				return inbound;
+			}
+			
+			@Override
+			public void networkChanged() {
+				NetManager.this.networkChanged();
+			}
+		}, timers, workers);
+	}
+	
+	public List<InetAddress> getBroadcasts(){
+		return transport.getBroadcasts();
+	}
+	
+	/**
+	 * The transport's network changed. The Model gets the new address and
+	 * broadcast list on its own thread, and other nodes are told by a JOIN
+	 */
+	private void networkChanged() {
+		events.publish(EventLoop.NETWORK, null, null);
+		if(isConnected()) {
+			sendJoin(null);
+		}
+	}
+	
+	/**
+	 * Sends a broadcast message to let every listening node
+	 * know that we are online
+	 */
+	public void join() {
+		//above the tombstone other nodes may keep since it left
+		selfVersion = nextNameVersion();
+		selfNode.join();
+		if(history != null) {
+			history.joined();
+		}
+		sendJoin(null);
+	}
+	
+	public void leave() {
+		selfNode.leave();
+		throw new UnsupportedOperationException("Not implemented");
+	}
+	
+	public void startServer() {
+		try {
+			transport.start();
+		}catch(IOException e) {
+			//TODO let caller know this
+			e.printStackTrace();
+			return;
+		}
+		if(presence != null) {
+			presence.start();
+		}
+	}
+	
+	public void stopServer() {
+		transport.stop();
+		if(presence != null) {
+			presence.stop();
+		}
+	}
+	
+	/**
+	 * Stop every thread of this node and close the transport. It can't be used anymore
+	 */
+	public void close() {
+		stopServer();
+		transport.close();
+		sender.stopSender();
+		if(wheel != null) {
+			wheel.stopWheel();
+		}
+		events.stopLoop();
+		workers.shutdown();
+	}
+	
+	/**
+	 * Create and send a Message
+	 * @param text The message
+	 * @param destination Node to send the private message or null if the message is public
+	 * @return The created message, or null if it is too large to be sent
+	 * at all. Otherwise it is sent asynchronously, failures are only logged
+	 */
+	public Message sendMessage(String text, Node destination) {
+		Packet packet = newPacket(Packet.MSG, text);
+		InetAddress address = destination != null ? destination.getAddress() : null;
+		if(address == null) {
+			packet.setFlags(Packet.FLAG_PUBLIC);
+		}
+		compress(packet, address);
+		if(!fits(packet)) {
+			System.err.println("Message too large to send");
+			return null;
+		}
+		CompletableFuture<Boolean> sent;
+		if(address != null && reliability != null) {
+			reliability.send(packet, address);
+			sent = CompletableFuture.completedFuture(true);
+		}else {
+			sent = send(packet, address, false);
+		}
+		if(history != null && destination == null) {
+			history.record(new History.Entry(selfNode.getAddress(), getSelfName(), text,
+					clock.millis(), myToken, packet.getSequence()));
+		}
+		sent.thenAccept(ok -> {
+			if(!ok) {
+				System.err.println("Message could not be sent to " + (destination != null ? destination : "everyone"));
+			}
+		});
+		return new Message(text, selfNode, clock.millis(), myToken, packet.getSequence());
+	}
+	
+	/**
+	 * @return true if the packet is small enough to be sent, in FRAGMENTs if needed
+	 */
+	private boolean fits(Packet packet) {
+		if(config.getWireFormat() != WireFormat.BINARY) {
+			//left to IP fragmentation, as always
+			return true;
+		}
+		//The reliable sequence may still be added
+		int length = binaryCodec.encodedLength(packet) + 4;
+		return length <= Reassembler.MAX_FRAGMENTS * (maxDatagramSize - BinaryCodec.FRAGMENT_HEADER_LENGTH);
+	}
+	
+	/**
+	 * Compress the content of a packet if it is worth it and every
+	 * node which is going to receive it said it can inflate it
+	 * @param destination The address to send to, or null for the whole network
+	 */
+	private void compress(Packet packet, InetAddress destination) {
+		if(config.getWireFormat() != WireFormat.BINARY) {
+			return;
+		}
+		if(destination != null ? inflaters.contains(destination) : legacyPeers.isEmpty()) {
+			compressor.compress(packet);
+		}
+	}
+	
+	public Compressor getCompressor() {
+		return compressor;
+	}
+	
+	private Packet newPacket(int command, String content) {
+		Packet packet = new Packet();
+		packet.setCommand(command);
+		packet.setSender(myToken);
+		packet.setSequence(nextSequence.incrementAndGet());
+		packet.setContent(content);
+		return packet;
+	}
+	
+	private PacketCodec getCodec() {
+		return config.getWireFormat() == WireFormat.BINARY ? binaryCodec : textCodec;
+	}
+	
+	private String getSelfName() {
+		return selfNode.getName() != null ? selfNode.getName() : selfNode.getDisplayName();
+	}
+	
+	public void sendJoin(InetAddress address) {
+		Packet packet = newPacket(Packet.JOIN, getSelfName());
+		packet.setFlags(Packet.FLAG_CAN_INFLATE);
+		packet.setNameVersion(selfVersion);
+		send(packet, address, true);
+	}
+
+	public void sendLeave(InetAddress address, String content) {
+		send(newPacket(Packet.LEAVE, content), address, true);
+	}
+	
+	public void sendHello(InetAddress address) {
+		Packet packet = newPacket(Packet.HELLO, getSelfName());
+		packet.setFlags(Packet.FLAG_CAN_INFLATE | (address == null ? Packet.FLAG_PUBLIC : 0));
+		packet.setNameVersion(selfVersion);
+		send(packet, address, false);
+	}
+	
+	/**
+	 * Tell everyone that the name of this node changed. With the binary
+	 * format, a single public HELLO does it, and the roster digests
+	 * catch up with any node which missed it
+	 * @param nodes Every node joined, for the text format
+	 */
+	public void announceName(Collection<InetAddress> nodes) {
+		selfVersion = nextNameVersion();
+		if(config.getWireFormat() == WireFormat.BINARY) {
+			sendHello(null);
+		}else {
+			nodes.forEach(this::sendHello);
+		}
+	}
+	
+	/**
+	 * Name versions come from the clock, so that a node which restarts
+	 * with another name still gets a higher version than before
+	 */
+	private int nextNameVersion() {
+		int now = (int) (clock.millis() / 1000);
+		return Math.max(selfVersion + 1, now);
+	}
+	
+	/**
+	 * Let a node which just joined know about this one. Binary nodes get
+	 * a ROSTER later, shared with other joiners, see HelloScheduler
+	 */
+	public void answerJoin(InetAddress address) {
+		if(helloScheduler != null) {
+			helloScheduler.joined(address, roster.isBinary(address), roster.size());
+		}else {
+			sendHello(address);
+		}
+	}
+	
+	private ByteBuffer encode(Packet packet) {
+		PacketCodec codec = getCodec();
+		ByteBuffer buffer = ByteBuffer.allocate(codec.encodedLength(packet));
+		codec.encode(packet, buffer);
+		buffer.flip();
+		return buffer;
+	}
+	
+	/**
+	 * Queue a packet to the Sender. It never blocks
+	 * @param destination The address to send to, or null for the whole network
+	 * @param urgent false if the packet may wait a little to travel with others
+	 * @return Completed with false if the packet could not be sent
+	 */
+	private CompletableFuture<Boolean> send(Packet packet, InetAddress destination, boolean urgent) {
+		return send(encode(packet), destination, urgent);
+	}
+	
+	private CompletableFuture<Boolean> send(ByteBuffer buffer, InetAddress destination, boolean urgent) {
+		if(buffer.remaining() > maxDatagramSize && BinaryCodec.isBinary(buffer)) {
+			return sendFragments(buffer, destination, urgent);
+		}
+		return sender.send(buffer, destination, urgent);
+	}
+	
+	/**
+	 * Split an encoded packet which doesn't fit in a datagram, so that
+	 * it isn't left to IP fragmentation
+	 */
+	private CompletableFuture<Boolean> sendFragments(ByteBuffer buffer, InetAddress destination, boolean urgent) {
+		int pieceLength = maxDatagramSize - BinaryCodec.FRAGMENT_HEADER_LENGTH;
+		int count = (buffer.remaining() + pieceLength - 1) / pieceLength;
+		if(count > Reassembler.MAX_FRAGMENTS) {
+			System.err.println(String.format("Packet of %d bytes is too large to send", buffer.remaining()));
+			return CompletableFuture.completedFuture(false);
+		}
+		int id = nextFragmentId.incrementAndGet();
+		CompletableFuture<Boolean> sent = CompletableFuture.completedFuture(true);
+		for(int i = 0; i < count; i++) {
+			int length = Math.min(pieceLength, buffer.remaining());
+			Packet fragment = newPacket(Packet.FRAGMENT, null);
+			fragment.setFlags(destination == null ? Packet.FLAG_PUBLIC : 0);
+			fragment.setFragment(id, i, count);
+			fragment.setContent(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+			buffer.position(buffer.position() + length);
+			sent = sent.thenCombine(send(encode(fragment), destination, urgent), Boolean::logicalAnd);
+		}
+		return sent;
+	}
+	
+	/**
+	 * @return The outbound stage, to look at its metrics
+	 */
+	public Sender getSender() {
+		return sender;
+	}
+	
+	/**
+	 * @return Largest datagram sent, after the IP and UDP headers
+	 */
+	public int getMaxDatagramSize() {
+		return maxDatagramSize;
+	}
+	
+	/**
+	 * @param destination The address to send to, or null for the whole network
+	 */
+	private boolean transmit(ByteBuffer datagram, InetAddress destination) {
+		if(destination == null) {
+			return transport.sendPublic(datagram);
+		}else {
+			return transport.send(datagram, destination);
+		}
+	}
+	
+	/**
+	 * The content String is only built when the Model is going to store
+	 * it, blank messages are passed as a constant empty String
+	 */
+	private void receivedMsg(Packet packet, InetAddress from) {
+		if(!compressor.decompress(packet)) {
+			return;
+		}
+		String content = packet.isContentBlank() ? "" : packet.getContent();
+		if(history != null && packet.isPublic() && !content.isEmpty()) {
+			Roster.Entry origin = roster.get(from);
+			history.record(new History.Entry(from, origin != null ? origin.getName() : null, content,
+					clock.millis(), packet.getSender(), packet.getSequence()));
+		}
+		events.publish(Packet.MSG, from, content, packet.getAutoDelete(), packet.isPublic(),
+				packet.getSender(), packet.getSequence());
+	}
+	
+	/**
+	 * Inflated and decoded by the workers, the packet is copied as the
+	 * receiving thread reuses it
+	 */
+	private void receivedHistory(Packet packet, InetAddress from) {
+		if(history == null) {
+			return;
+		}
+		Packet copy = new Packet();
+		copy.copyFrom(packet);
+		workers.execute(() -> {
+			if(!compressor.decompress(copy)) {
+				return;
+			}
+			List<History.Entry> entries = History.decode(copy.getContentData(), copy.getContentOffset(), copy.getContentLength());
+			if(!entries.isEmpty()) {
+				events.publishHistory(from, entries);
+			}
+		});
+	}
+	
+	private void receivedAck(Packet packet, InetAddress from) {
+		if(reliability != null) {
+			reliability.receivedAck(from, packet.getReliableSequence());
+		}
+	}
+	
+	/**
+	 * Once every fragment is here, the original packet is handled as if
+	 * it had arrived whole
+	 */
+	private void receivedFragment(Packet packet, InetAddress from, Inbound inbound) {
+		ByteBuffer whole = reassembler.add(packet);
+		if(whole != null && binaryCodec.decode(whole, inbound.assembledPacket)) {
+			received(inbound.assembledPacket, from, inbound);
+		}
+	}
+	
+	public Reassembler getReassembler() {
+		return reassembler;
+	}
+	
+	/**
+	 * @return The reliable unicast layer, or null if disabled
+	 */
+	public Reliability getReliability() {
+		return reliability;
+	}
+	
+	/**
+	 * What each receiving thread keeps for itself. The unicast datagrams
+	 * of a source always land on the same socket, and the public ones on
+	 * the first, so its rate is limited by two shards at most
+	 */
+	private class Inbound implements Receiver.Listener {
+		private final Packet inPacket;
+		private final Packet assembledPacket;
+		private final RateLimiter rateLimiter;
+		
+		Inbound(RateLimiter rateLimiter) {
+			this.inPacket = new Packet();
+			this.assembledPacket = new Packet();
+			this.rateLimiter = rateLimiter;
+		}
+		
+		/**
+		 * Called from the Receiver thread for each batch of incoming datagrams.
+		 * The events of the whole batch reach the Model in one go
+		 */
+		@Override
+		public int received(Receiver.Batch batch) {
+			int dropped = 0;
+			events.hold();
+			try {
+				for(int i = 0; i < batch.size(); i++) {
+					if(!received(batch.get(i), batch.getSender(i))) {
+						dropped++;
+					}
+				}
+			}finally {
+				events.release();
+			}
+			return dropped;
+		}
+		
+		/**
+		 * A binary datagram may carry several packets one after another
+		 * @return false if any of them was dropped
+		 */
+		private boolean received(ByteBuffer data, InetSocketAddress from) {
+			PacketCodec codec = BinaryCodec.isBinary(data) ? binaryCodec : textCodec;
+			long source = from.getAddress().hashCode();
+			boolean accepted = true;
+			while(data.hasRemaining() && codec.decode(data, inPacket)) {
+				if(rateLimiter.tryAcquire(source)) {
+					NetManager.this.received(inPacket, from.getAddress(), this);
+				}else {
+					accepted = false;
+				}
+			}
+			return accepted;
+		}
+	}
+	
+	private void received(Packet packet, InetAddress from, Inbound inbound) {
+		if(packet.getSender() == myToken || getSelfNode().getAddress().equals(from)) {
+			//this same node's packet, back from some broadcast addresses, and
+			//from every other domain in FAN_OUT, with that domain's address
+			return;
+		}
+		
+		//Only binary packets, with a sequence, tell that a node is still alive
+		if(presence != null && packet.getSequence() != 0 && packet.getCommand() != Packet.LEAVE) {
+			presence.heard(from);
+		}
+		if(reliability != null && packet.getSequence() != 0) {
+			reliability.heard(from, packet.getSender());
+		}
+		
+		//Text packets have no sequence. Reliable ones must be acknowledged again
+		//if repeated, Reliability drops the copies itself
+		if(packet.getSequence() != 0 && !packet.hasFlag(Packet.FLAG_RELIABLE)
+				&& duplicates.isDuplicate(packet.getSender(), packet.getSequence())) {
+			return;
+		}
+		
+		if(packet.hasFlag(Packet.FLAG_RELIABLE)) {
+			if(reliability != null) {
+				reliability.received(packet, from);
+			}else {
+				System.err.println("Received reliable packet, but reliability is disabled");
+			}
+			return;
+		}
+		
+		switch(packet.getCommand()) {
+			case Packet.MSG:   receivedMsg(packet, from); break;
+			case Packet.ACK:   receivedAck(packet, from); break;
+			case Packet.FRAGMENT: receivedFragment(packet, from, inbound); break;
+			case Packet.HEARTBEAT: receivedHeartbeat(packet, from); break;
+			case Packet.SUMMARY: receivedSummary(packet, from); break;
+			case Packet.JOIN:
+				updateCapabilities(packet, from);
+				roster.update(from, packet.getContent(), packet.getNameVersion(), packet.getSequence() != 0, true);
+				events.publish(Packet.JOIN, from, packet.getContent());
+				break;
+			case Packet.LEAVE:
+				forgetPeer(from);
+				events.publish(Packet.LEAVE, from, packet.getContent());
+				break;
+			case Packet.HELLO:
+				updateCapabilities(packet, from);
+				roster.update(from, packet.getContent(), packet.getNameVersion(), packet.getSequence() != 0, true);
+				if(history != null && packet.getSequence() != 0) {
+					history.peerHeard(from);
+				}
+				events.publish(Packet.HELLO, from, packet.getContent());
+				break;
+			case Packet.ROSTER: receivedRoster(packet, from); break;
+			case Packet.HISTORY_REQ:
+				if(history != null) {
+					history.requested(packet, from);
+				}
+				break;
+			case Packet.HISTORY: receivedHistory(packet, from); break;
+			default: System.err.println("Received bad command: " + packet.getCommand()); break;
+		}
+	}
+
+	/**
+	 * Every node new to the roster, or with a new name, is handed to the
+	 * Model as if it had said HELLO
+	 */
+	private void receivedRoster(Packet packet, InetAddress from) {
+		if(helloScheduler == null) {
+			return;
+		}
+		InetAddress selfAddress = selfNode.getAddress();
+		String selfName = getSelfName();
+		boolean[] listsSelf = new boolean[1];
+		Roster.decode(packet, (address, name, version, binary) -> {
+			boolean direct = address == null;
+			if(direct) {
+				address = from;
+			}else if(address.equals(selfAddress)) {
+				listsSelf[0] = name.equals(selfName);
+				return;
+			}
+			if(roster.update(address, name, version, binary, direct)) {
+				if(binary && address != from) {
+					//expire it too if it's never heard directly
+					presence.heard(address);
+				}
+				events.publish(Packet.HELLO, address, name);
+			}
+		});
+		if(packet.isPublic()) {
+			helloScheduler.heardRoster(listsSelf[0]);
+		}
+		history.peerHeard(from);
+	}
+	
+	/**
+	 * A different digest means one of both views lacks something: ask
+	 * for what this one lacks, telling what it has. Every node hears the
+	 * HEARTBEAT, so only about SUMMARY_ANSWERS of those disagreeing ask,
+	 * after a random delay. The others get their turn with the next
+	 * HEARTBEATs, from any node
+	 */
+	private void receivedHeartbeat(Packet packet, InetAddress from) {
+		if(packet.getContentLength() >= Roster.DIGEST_LENGTH + 4) {
+			ByteBuffer content = ByteBuffer.wrap(packet.getContentData(), packet.getContentOffset(), packet.getContentLength());
+			presence.heardHeartbeat(from, content.getInt(content.position() + Roster.DIGEST_LENGTH));
+		}
+		if(roster.differs(packet, roster.digest(selfNode.getAddress(), selfVersion))
+				&& random.nextInt(Math.max(1, roster.size())) < SUMMARY_ANSWERS) {
+			int offset = packet.getContentOffset();
+			scheduleSummary(from, Arrays.copyOfRange(packet.getContentData(), offset, offset + Roster.DIGEST_LENGTH));
+		}
+	}
+	
+	private synchronized void scheduleSummary(InetAddress address, byte[] digest) {
+		if(summaryTimer.isScheduled()) {
+			return;
+		}
+		summaryTarget = address;
+		summaryDigest = digest;
+		summaryTimer.schedule(1 + random.nextInt(SUMMARY_JITTER));
+	}
+	
+	/**
+	 * Ask unless what was heard meanwhile already made this view agree
+	 */
+	private void sendPendingSummary() {
+		InetAddress address;
+		byte[] digest;
+		synchronized(this) {
+			address = summaryTarget;
+			digest = summaryDigest;
+			summaryTarget = null;
+			summaryDigest = null;
+		}
+		if(address != null && !Arrays.equals(digest, roster.digest(selfNode.getAddress(), selfVersion))) {
+			sendSummary(address);
+		}
+	}
+	
+	/**
+	 * Answer with the entries of the buckets which differ, and ask the
+	 * other node for its own entries of those buckets
+	 */
+	private void receivedSummary(Packet packet, InetAddress from) {
+		InetAddress selfAddress = selfNode.getAddress();
+		BitSet differing = roster.differingBuckets(packet, selfAddress, selfVersion);
+		if(differing == null || differing.isEmpty()) {
+			return;
+		}
+		synchronized(rosterAnswers) {
+			if(!rosterAnswers.tryAcquire(from.hashCode())) {
+				return;
+			}
+		}
+		for(byte[] content : roster.encode(selfAddress, getSelfName(), selfVersion, differing)) {
+			Packet answer = newPacket(Packet.ROSTER, null);
+			answer.setContent(content, 0, content.length);
+			send(answer, from, false);
+		}
+		sendSummary(from);
+	}
+	
+	/**
+	 * At most one SUMMARY per MIN_SUMMARY_GAP from this node. Along with
+	 * the few asking after each HEARTBEAT, and ROSTER_ANSWER_RATE, that
+	 * keeps reconciling about as costly however many nodes disagree
+	 */
+	private void sendSummary(InetAddress address) {
+		long now = clock.millis();
+		if(now - lastSummary < MIN_SUMMARY_GAP) {
+			return;
+		}
+		lastSummary = now;
+		Packet packet = newPacket(Packet.SUMMARY, null);
+		byte[] content = roster.encodeSummary(selfNode.getAddress(), selfVersion);
+		packet.setContent(content, 0, content.length);
+		send(packet, address, false);
+	}
+	
+	private void forgetPeer(InetAddress address) {
+		inflaters.remove(address);
+		legacyPeers.remove(address);
+		roster.remove(address);
+		if(presence != null) {
+			presence.forget(address);
+		}
+	}
+	
+	/**
+	 * Called by the EventLoop, on the thread the Model lives in
+	 */
+	private void apply(EventLoop.Event event) {
+		InetAddress from = event.getFrom();
+		switch(event.getCommand()) {
+			case Packet.MSG:
+				model.receivedMessage(from, event.getContent(), event.getAutoDelete(), event.isPublic(),
+						event.getSender(), event.getSequence());
+				break;
+			case Packet.HISTORY: model.receivedHistory(event.getHistory()); break;
+			case Packet.JOIN:  model.nodeJoined(from, event.getContent()); break;
+			case Packet.LEAVE: model.nodeLeft(from, event.getContent()); break;
+			case Packet.HELLO: model.nodeSaidHello(from, event.getContent()); break;
+			case EventLoop.NETWORK:
+				InetAddress local = transport.getLocalAddress();
+				if(!local.equals(selfNode.getAddress())) {
+					model.selfAddressChanged(local);
+				}
+				model.networkChanged(getBroadcasts());
+				break;
+		}
+	}
+	
+	public EventLoop getEventLoop() {
+		return events;
+	}
+	
+	public DuplicateFilter getDuplicateFilter() {
+		return duplicates;
+	}
+	
+	/**
+	 * @return The rate limiter of each receive shard
+	 */
+	public List<RateLimiter> getRateLimiters() {
+		List<RateLimiter> result = new ArrayList<>();
+		for(Inbound inbound : inbounds) {
+			result.add(inbound.rateLimiter);
+		}
+		return result;
+	}
+	
+	public Roster getRoster() {
+		return roster;
+	}
+	
+	/**
+	 * @return The JOIN answering stage, or null with the text format
+	 */
+	public HelloScheduler getHelloScheduler() {
+		return helloScheduler;
+	}
+	
+	/**
+	 * @return The recent public messages, or null with the text format
+	 */
+	public History getHistory() {
+		return history;
+	}
+	
+	/**
+	 * @return Where background work runs, to look at its metrics
+	 */
+	public Workers getWorkers() {
+		return workers;
+	}
+	
+	/**
+	 * @return The liveness tracker, or null with the text format
+	 */
+	public Presence getPresence() {
+		return presence;
+	}
+	
+	/**
+	 * Remember whether a peer can take compressed packets. Text packets
+	 * never carry flags, so text peers end up as legacy ones
+	 */
+	private void updateCapabilities(Packet packet, InetAddress from) {
+		if(packet.hasFlag(Packet.FLAG_CAN_INFLATE)) {
+			inflaters.add(from);
+			legacyPeers.remove(from);
+		}else {
+			legacyPeers.add(from);
+			inflaters.remove(from);
+		}
+	}
+	
+	public Node getSelfNode() {
+		return selfNode;
+	}
+	
+	public Clock getClock() {
+		return clock;
+	}
+
+	public boolean isConnected() {
+		return transport.isStarted();
+	}
+	
+	public void setBroadcastIP(String broadcast) {
+		try {
+			transport.setBroadcast(InetAddress.getByName(broadcast));
+			this.join();
+		} catch (UnknownHostException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	public DatagramTransport getTransport() {
+		return transport;
+	}
+
+	
+}
@@ -0,0 +1,215 @@
+/*	Solarys Chat - Local network UDP broadcaster chat
+ * 	Copyright 2018 Yeshe Santos García <civyshk@gmail.com>
+ *	
+ *	This file is part of Solarys Chat
+ *	
+ *	Solarys Chat is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.project104.chat.solaris;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InterfaceAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * What the network interfaces of this host looked like at one moment:
+ * the IPv4 addresses which can broadcast, the address this node is
+ * known by and the smallest MTU. Taking it only asks the operating
+ * system, no packet is sent anywhere, so it works the same on a LAN
+ * with no way out to the internet
+ */
+public class NetworkSnapshot {
+	/** One IPv4 address of an interface which is up and can broadcast */
+	public static class Entry {
+		private final NetworkInterface networkInterface;
+		private final InterfaceAddress address;
+
+		Entry(NetworkInterface networkInterface, InterfaceAddress address) {
+			this.networkInterface = networkInterface;
+			this.address = address;
+		}
+
+		public NetworkInterface getNetworkInterface() {
+			return networkInterface;
+		}
+
+		public InterfaceAddress getInterfaceAddress() {
+			return address;
+		}
+
+		public InetAddress getBroadcast() {
+			return address.getBroadcast();
+		}
+
+		/**
+		 * @return true if both are the same address, on the same interface and subnet
+		 */
+		public boolean sameAs(NetworkInterface networkInterface, InetAddress local, int prefixLength) {
+			return this.networkInterface.getName().equals(networkInterface.getName())
+					&& address.getAddress().equals(local)
+					&& address.getNetworkPrefixLength() == prefixLength;
+		}
+
+		private String getKey() {
+			return networkInterface.getName() + " " + address.getAddress().getHostAddress()
+					+ "/" + address.getNetworkPrefixLength() + " " + address.getBroadcast().getHostAddress();
+		}
+	}
+
+	private final List<Entry> entries;
+	private final List<NetworkInterface> multicastInterfaces;
+	private final InetAddress localAddress;
+	private final int mtu;
+	private final Set<String> keys;
+
+	private NetworkSnapshot(List<Entry> entries, List<NetworkInterface> multicastInterfaces, InetAddress localAddress, int mtu) {
+		this.entries = Collections.unmodifiableList(entries);
+		this.multicastInterfaces = Collections.unmodifiableList(multicastInterfaces);
+		this.localAddress = localAddress;
+		this.mtu = mtu;
+		this.keys = new HashSet<>();
+		for(Entry entry : entries) {
+			keys.add(entry.getKey());
+		}
+		for(NetworkInterface iface : multicastInterfaces) {
+			keys.add(iface.getName());
+		}
+	}
+
+	/**
+	 * Enumerate the interfaces of this host. It may take a while on
+	 * some systems, so the GUI thread should rather call scanAsync()
+	 */
+	public static NetworkSnapshot scan() {
+		List<Entry> entries = new ArrayList<>();
+		List<NetworkInterface> multicastInterfaces = new ArrayList<>();
+		InetAddress fallback = null;
+		int mtu = Integer.MAX_VALUE;
+		try {
+			Enumeration<NetworkInterface> ifaces = NetworkInterface.getNetworkInterfaces();
+			while(ifaces != null && ifaces.hasMoreElements()) {
+				NetworkInterface iface = ifaces.nextElement();
+				if(!iface.isUp() || iface.isLoopback()) {
+					continue;
+				}
+				if(iface.getMTU() > 0) {
+					mtu = Math.min(mtu, iface.getMTU());
+				}
+				boolean multicast = iface.supportsMulticast();
+				for(InterfaceAddress address : iface.getInterfaceAddresses()) {
+					if(address == null || !(address.getAddress() instanceof Inet4Address)) {
+						continue;
+					}
+					if(multicast) {
+						multicastInterfaces.add(iface);
+						multicast = false;
+					}
+					if(address.getBroadcast() != null) {
+						entries.add(new Entry(iface, address));
+					}else if(fallback == null) {
+						fallback = address.getAddress();
+					}
+				}
+			}
+		} catch (SocketException e) {
+			System.err.println("Error while getting network interfaces");
+			e.printStackTrace();
+		}
+
+		//site local addresses first, those are the ones a LAN chat is about
+		Collections.sort(entries, (a, b) -> Boolean.compare(
+				!a.address.getAddress().isSiteLocalAddress(),
+				!b.address.getAddress().isSiteLocalAddress()));
+
+		InetAddress localAddress;
+		if(!entries.isEmpty()) {
+			localAddress = entries.get(0).address.getAddress();
+		}else if(fallback != null) {
+			localAddress = fallback;
+		}else {
+			localAddress = InetAddress.getLoopbackAddress();
+		}
+		return new NetworkSnapshot(entries, multicastInterfaces, localAddress, mtu == Integer.MAX_VALUE ? NetConfig.DEFAULT_MTU : mtu);
+	}
+
+	/**
+	 * scan() in a background thread
+	 */
+	public static CompletableFuture<NetworkSnapshot> scanAsync() {
+		return CompletableFuture.supplyAsync(NetworkSnapshot::scan);
+	}
+
+	/**
+	 * scan() in a thread of the executor
+	 */
+	public static CompletableFuture<NetworkSnapshot> scanAsync(Executor executor) {
+		return CompletableFuture.supplyAsync(NetworkSnapshot::scan, executor);
+	}
+
+	/**
+	 * @return Addresses which can broadcast, the one of localAddress first
+	 */
+	public List<Entry> getEntries() {
+		return entries;
+	}
+
+	/**
+	 * @param names Names of the interfaces to use, or empty to use all of them
+	 * @return Interfaces which are up, not loopback, support multicast and have an IPv4 address
+	 */
+	public List<NetworkInterface> getMulticastInterfaces(Collection<String> names) {
+		List<NetworkInterface> result = new ArrayList<>();
+		for(NetworkInterface iface : multicastInterfaces) {
+			if(names.isEmpty() || names.contains(iface.getName())) {
+				result.add(iface);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return The address of this node on the most likely LAN,
+	 * or the loopback address if this host has no network at all
+	 */
+	public InetAddress getLocalAddress() {
+		return localAddress;
+	}
+
+	/**
+	 * @return The smallest MTU among the interfaces which are up, or DEFAULT_MTU
+	 */
+	public int getMtu() {
+		return mtu;
+	}
+
+	/**
+	 * @return true if both snapshots have the same addresses on the same
+	 * interfaces, and so the same sockets would be bound to them
+	 */
+	public boolean sameAs(NetworkSnapshot other) {
+		return keys.equals(other.keys) && localAddress.equals(other.localAddress);
+	}
+}
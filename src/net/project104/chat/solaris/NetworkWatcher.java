@@ -0,0 +1,111 @@
+/*	Solarys Chat - Local network UDP broadcaster chat
+ * 	Copyright 2018 Yeshe Santos García <civyshk@gmail.com>
+ *	
+ *	This file is part of Solarys Chat
+ *	
+ *	Solarys Chat is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.project104.chat.solaris;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Looks at the network interfaces every few seconds and tells when they
+ * changed, e.g. after a DHCP renewal, roaming to another Wi-Fi network
+ * or docking. Each look is a NetworkSnapshot taken in the background,
+ * and the next one is scheduled when it's done, so slow scans never pile up
+ */
+public class NetworkWatcher {
+	public static final long DEFAULT_INTERVAL = 5000;
+
+	public interface Listener {
+		/**
+		 * Called from a background thread, only when something changed
+		 */
+		public void changed(NetworkSnapshot previous, NetworkSnapshot current);
+	}
+
+	private final Listener listener;
+	private final Executor executor;
+	private final Scheduler.Timeout check;
+	private final long interval;
+	private volatile NetworkSnapshot current;
+	private volatile boolean running;
+
+	private final AtomicLong scans;
+	private final AtomicLong changes;
+
+	/**
+	 * @param executor Where the scans run
+	 * @param initial The snapshot the network was set up with
+	 * @param interval Milliseconds between scans
+	 */
+	public NetworkWatcher(Scheduler timers, Executor executor, NetworkSnapshot initial, long interval, Listener listener) {
+		this.listener = listener;
+		this.executor = executor;
+		this.check = timers.newTimeout(this::scan);
+		this.interval = interval;
+		this.current = initial;
+		this.scans = new AtomicLong();
+		this.changes = new AtomicLong();
+	}
+
+	public void start() {
+		running = true;
+		check.schedule(interval);
+	}
+
+	public void stop() {
+		running = false;
+		check.cancel();
+	}
+
+	private void scan() {
+		NetworkSnapshot.scanAsync(executor)
+			.thenAccept(this::compare)
+			.whenComplete((result, e) -> {
+				if(e != null) {
+					//TODO let someone know
+					e.printStackTrace();
+				}
+				if(running) {
+					check.schedule(interval);
+				}
+			});
+	}
+
+	private void compare(NetworkSnapshot latest) {
+		scans.incrementAndGet();
+		NetworkSnapshot previous = current;
+		if(!latest.sameAs(previous)) {
+			current = latest;
+			changes.incrementAndGet();
+			listener.changed(previous, latest);
+		}
+	}
+
+	public NetworkSnapshot getCurrent() {
+		return current;
+	}
+
+	public long getScans() {
+		return scans.get();
+	}
+
+	public long getChanges() {
+		return changes.get();
+	}
+}
@@ -0,0 +1,299 @@
+/*	Solarys Chat - Local network UDP broadcaster chat
+ * 	Copyright 2018 Yeshe Santos García <civyshk@gmail.com>
+ *	
+ *	This file is part of Solarys Chat
+ *	
+ *	Solarys Chat is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.project104.chat.solaris;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * One protocol message, as it travels between NetManager and a PacketCodec.
+ *
+ * Instances are meant to be reused: when decoding, the content is not
+ * copied but referenced inside the codec buffer (data, offset, length),
+ * and only turned into a String on request.
+ */
+public class Packet {
+	public static final int MSG   = 1;
+	public static final int JOIN  = 2;
+	public static final int LEAVE = 3;
+	public static final int HELLO = 4;
+	/** Cumulative acknowledgement of reliable packets, see Reliability */
+	public static final int ACK   = 5;
+	/** One piece of a packet too large for a datagram, see Reassembler */
+	public static final int FRAGMENT = 6;
+	/** Empty packet telling that a node is still there, see Presence */
+	public static final int HEARTBEAT = 7;
+	/** Public answer to JOINs listing the nodes known by the sender, see Roster */
+	public static final int ROSTER = 8;
+	/** Digests of the nodes known by the sender, by bucket, asking for the buckets it lacks, see Roster */
+	public static final int SUMMARY = 9;
+	/** Asks for recent public messages, see History */
+	public static final int HISTORY_REQ = 10;
+	/** A batch of recent public messages, see History */
+	public static final int HISTORY = 11;
+
+	/** The message was sent to the whole network, not only to us */
+	public static final int FLAG_PUBLIC   = 0x01;
+	/** The packet carries a per-peer sequence and must be acknowledged */
+	public static final int FLAG_RELIABLE = 0x02;
+	/** The content is deflated, see Compressor */
+	public static final int FLAG_COMPRESSED = 0x04;
+	/** Sent on JOIN and HELLO by nodes which can take compressed packets */
+	public static final int FLAG_CAN_INFLATE = 0x08;
+
+	public static final int DEFAULT_TTL = 1;
+
+	private int command;
+	private int flags;
+	private int ttl;
+	private long sender;
+	private int sequence;
+	private int autoDelete;
+	private int reliableSequence;
+	private int oldestUnacked;
+	private int nameVersion;
+	private int fragmentId;
+	private int fragmentIndex;
+	private int fragmentCount;
+
+	private byte[] data;
+	private int offset;
+	private int length;
+
+	public Packet() {
+		clear();
+	}
+
+	public void clear() {
+		command = 0;
+		flags = 0;
+		ttl = DEFAULT_TTL;
+		sender = 0;
+		sequence = 0;
+		autoDelete = -1;
+		reliableSequence = 0;
+		oldestUnacked = 0;
+		nameVersion = 0;
+		fragmentId = 0;
+		fragmentIndex = 0;
+		fragmentCount = 0;
+		data = null;
+		offset = 0;
+		length = 0;
+	}
+
+	public int getCommand() {
+		return command;
+	}
+
+	public void setCommand(int command) {
+		this.command = command;
+	}
+
+	public int getFlags() {
+		return flags;
+	}
+
+	public void setFlags(int flags) {
+		this.flags = flags;
+	}
+
+	public boolean hasFlag(int flag) {
+		return (flags & flag) != 0;
+	}
+
+	public boolean isPublic() {
+		return hasFlag(FLAG_PUBLIC);
+	}
+
+	public int getTtl() {
+		return ttl;
+	}
+
+	public void setTtl(int ttl) {
+		this.ttl = ttl;
+	}
+
+	/**
+	 * @return The random token which identifies the sending NetManager
+	 */
+	public long getSender() {
+		return sender;
+	}
+
+	public void setSender(long sender) {
+		this.sender = sender;
+	}
+
+	public int getSequence() {
+		return sequence;
+	}
+
+	public void setSequence(int sequence) {
+		this.sequence = sequence;
+	}
+
+	public int getAutoDelete() {
+		return autoDelete;
+	}
+
+	public void setAutoDelete(int autoDelete) {
+		this.autoDelete = autoDelete;
+	}
+
+	/**
+	 * @return The per-peer sequence of a reliable packet, or the
+	 * highest sequence acknowledged by an ACK
+	 */
+	public int getReliableSequence() {
+		return reliableSequence;
+	}
+
+	public void setReliableSequence(int reliableSequence) {
+		this.reliableSequence = reliableSequence;
+	}
+
+	/**
+	 * @return The oldest reliable sequence the sender still waits an ACK
+	 * for, when the packet was sent. 0 if unknown
+	 */
+	public int getOldestUnacked() {
+		return oldestUnacked;
+	}
+
+	public void setOldestUnacked(int oldestUnacked) {
+		this.oldestUnacked = oldestUnacked;
+	}
+
+	/**
+	 * @return The version of the name carried by a JOIN or HELLO, higher
+	 * each time the sender changes it. 0 if unknown
+	 */
+	public int getNameVersion() {
+		return nameVersion;
+	}
+
+	public void setNameVersion(int nameVersion) {
+		this.nameVersion = nameVersion;
+	}
+
+	/**
+	 * @return The id shared by every FRAGMENT of the same packet
+	 */
+	public int getFragmentId() {
+		return fragmentId;
+	}
+
+	public int getFragmentIndex() {
+		return fragmentIndex;
+	}
+
+	public int getFragmentCount() {
+		return fragmentCount;
+	}
+
+	public void setFragment(int id, int index, int count) {
+		this.fragmentId = id;
+		this.fragmentIndex = index;
+		this.fragmentCount = count;
+	}
+
+	/**
+	 * Copy every field of another packet. The content is copied too, so
+	 * this packet no longer depends on the buffer the other one was decoded from
+	 */
+	public void copyFrom(Packet other) {
+		command = other.command;
+		flags = other.flags;
+		ttl = other.ttl;
+		sender = other.sender;
+		sequence = other.sequence;
+		autoDelete = other.autoDelete;
+		reliableSequence = other.reliableSequence;
+		oldestUnacked = other.oldestUnacked;
+		nameVersion = other.nameVersion;
+		fragmentId = other.fragmentId;
+		fragmentIndex = other.fragmentIndex;
+		fragmentCount = other.fragmentCount;
+		byte[] content = new byte[other.length];
+		if(other.length > 0) {
+			System.arraycopy(other.data, other.offset, content, 0, other.length);
+		}
+		setContent(content, 0, content.length);
+	}
+
+	/**
+	 * Set the content (message, name or bye text) of this packet
+	 * @param content Any text, null is taken as empty
+	 */
+	public void setContent(String content) {
+		byte[] bytes = content != null ? content.getBytes(StandardCharsets.UTF_8) : new byte[0];
+		setContent(bytes, 0, bytes.length);
+	}
+
+	/**
+	 * Reference UTF-8 encoded content, without copying it
+	 */
+	public void setContent(byte[] data, int offset, int length) {
+		this.data = data;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	public byte[] getContentData() {
+		return data;
+	}
+
+	public int getContentOffset() {
+		return offset;
+	}
+
+	public int getContentLength() {
+		return length;
+	}
+
+	/**
+	 * @return true if the content is empty or only has whitespace,
+	 * checked without decoding it
+	 */
+	public boolean isContentBlank() {
+		for(int i = offset; i < offset + length; i++) {
+			if((data[i] & 0xFF) > ' ') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return The content decoded as a new String
+	 */
+	public String getContent() {
+		if(length == 0) {
+			return "";
+		}
+		return new String(data, offset, length, StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Packet(command=%d flags=%x sender=%x seq=%d length=%d)",
+				command, flags, sender, sequence, length);
+	}
+}
@@ -0,0 +1,55 @@
+/*	Solarys Chat - Local network UDP broadcaster chat
+ * 	Copyright 2018 Yeshe Santos García <civyshk@gmail.com>
+ *	
+ *	This file is part of Solarys Chat
+ *	
+ *	Solarys Chat is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.project104.chat.solaris;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Translates Packets from and to their on-the-wire representation
+ */
+public interface PacketCodec {
+
+	/**
+	 * @param packet The packet to encode
+	 * @return The number of bytes encode() will write for this packet
+	 */
+	public int encodedLength(Packet packet);
+
+	/**
+	 * Write a packet at the position of the buffer, and advance it
+	 * @throws java.nio.BufferOverflowException If the packet doesn't fit
+	 */
+	public void encode(Packet packet, ByteBuffer buffer);
+
+	/**
+	 * Read one packet from the position of the buffer, and advance it.
+	 * The content of the packet keeps referencing the buffer
+	 * @return true if a valid packet was read
+	 */
+	public boolean decode(ByteBuffer buffer, Packet packet);
+
+	/**
+	 * Update the oldest unacknowledged sequence of an encoded reliable
+	 * packet, before it is transmitted again. Formats which don't carry
+	 * it leave the packet as it is
+	 * @param encoded The packet, from its position
+	 */
+	public void setOldestUnacked(ByteBuffer encoded, int reliableSequence, int oldestUnacked);
+}
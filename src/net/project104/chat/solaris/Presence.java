@@ -0,0 +1,230 @@
+/*	Solarys Chat - Local network UDP broadcaster chat
+ * 	Copyright 2018 Yeshe Santos García <civyshk@gmail.com>
+ *	
+ *	This file is part of Solarys Chat
+ *	
+ *	Solarys Chat is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.project104.chat.solaris;
+
+import java.net.InetAddress;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Liveness of the other nodes, so that those which vanish without a
+ * LEAVE don't stay in the rooms forever.
+ *
+ * Each tracked node has a Timeout on the Scheduler, rescheduled in O(1)
+ * by every packet heard from it; when it fires the node is taken as gone.
+ * This node sends a HEARTBEAT every interval. The interval grows with the
+ * number of nodes, so that the whole network sends about
+ * HEARTBEATS_PER_SECOND no matter how large it gets.
+ *
+ * Each node counts the nodes it knows, so intervals differ. A HEARTBEAT
+ * tells the interval of its sender, which is then timed out on that,
+ * or on MAX_INTERVAL until its first HEARTBEAT. Never on less than the
+ * interval of this node though: a sender still learning the network
+ * soon moves to about that, and a single lost HEARTBEAT would be enough
+ * to miss the first longer gap. Both intervals may grow after a node is
+ * heard, so its timeout is checked again when it fires.
+ *
+ * Only nodes using the binary format are tracked, text ones never send
+ * heartbeats.
+ */
+public class Presence {
+	public static final long MIN_INTERVAL = 5000;
+	public static final long MAX_INTERVAL = 120000;
+	public static final int HEARTBEATS_PER_SECOND = 2;
+	/** Heartbeats a node may miss before being taken as gone */
+	public static final int MISSED_HEARTBEATS = 3;
+
+	public interface Listener {
+		/**
+		 * Called from the timer thread when it's time to send a HEARTBEAT
+		 * @param interval Milliseconds until the next one, at most
+		 */
+		public void sendHeartbeat(long interval);
+
+		/**
+		 * Called from the timer thread when a node has been silent too long
+		 */
+		public void expired(InetAddress address);
+	}
+
+	private final Scheduler timers;
+	private final Listener listener;
+	private static class Tracked {
+		final Scheduler.Timeout timeout;
+		volatile long interval = MAX_INTERVAL;
+		/** Milliseconds of silence its timeout was scheduled for */
+		volatile long silence;
+
+		Tracked(Scheduler.Timeout timeout) {
+			this.timeout = timeout;
+		}
+	}
+
+	private final Map<InetAddress, Tracked> expiries;
+	private final Scheduler.Timeout heartbeat;
+	private final Random random;
+
+	private final AtomicLong heartbeatsSent;
+	private final AtomicLong expired;
+
+	/**
+	 * @param random For the jitter of heartbeats
+	 */
+	public Presence(Scheduler timers, Random random, Listener listener) {
+		this.timers = timers;
+		this.listener = listener;
+		this.expiries = new ConcurrentHashMap<>();
+		this.heartbeat = timers.newTimeout(this::beat);
+		this.random = random;
+		this.heartbeatsSent = new AtomicLong();
+		this.expired = new AtomicLong();
+	}
+
+	/**
+	 * Start sending heartbeats
+	 */
+	public void start() {
+		heartbeat.schedule(jitter(getInterval()) / 2);
+	}
+
+	/**
+	 * Stop sending heartbeats and forget every node
+	 */
+	public void stop() {
+		heartbeat.cancel();
+		for(Tracked tracked : expiries.values()) {
+			tracked.timeout.cancel();
+		}
+		expiries.clear();
+	}
+
+	/**
+	 * A packet was received from a node, so it's alive
+	 */
+	public void heard(InetAddress address) {
+		schedule(track(address));
+	}
+
+	/**
+	 * A HEARTBEAT was received from a node
+	 * @param interval The one it tells, milliseconds until its next HEARTBEAT
+	 */
+	public void heardHeartbeat(InetAddress address, long interval) {
+		Tracked tracked = track(address);
+		tracked.interval = Math.max(MIN_INTERVAL, Math.min(MAX_INTERVAL, interval));
+		schedule(tracked);
+	}
+
+	private void schedule(Tracked tracked) {
+		tracked.silence = getTimeout(Math.max(tracked.interval, getInterval()));
+		tracked.timeout.schedule(tracked.silence);
+	}
+
+	private Tracked track(InetAddress address) {
+		Tracked tracked = expiries.get(address);
+		if(tracked == null) {
+			tracked = new Tracked(timers.newTimeout(() -> expire(address)));
+			Tracked previous = expiries.putIfAbsent(address, tracked);
+			if(previous != null) {
+				tracked = previous;
+			}
+		}
+		return tracked;
+	}
+
+	/**
+	 * Stop tracking a node, e.g. because it said LEAVE
+	 */
+	public void forget(InetAddress address) {
+		Tracked tracked = expiries.remove(address);
+		if(tracked != null) {
+			tracked.timeout.cancel();
+		}
+	}
+
+	private void expire(InetAddress address) {
+		Tracked tracked = expiries.get(address);
+		if(tracked == null) {
+			return;
+		}
+		long timeout = getTimeout(Math.max(tracked.interval, getInterval()));
+		if(timeout > tracked.silence) {
+			tracked.timeout.schedule(timeout - tracked.silence);
+			tracked.silence = timeout;
+			return;
+		}
+		if(expiries.remove(address) != null) {
+			expired.incrementAndGet();
+			listener.expired(address);
+		}
+	}
+
+	private void beat() {
+		long interval = getInterval();
+		heartbeatsSent.incrementAndGet();
+		listener.sendHeartbeat(interval + interval / 10);
+		heartbeat.schedule(jitter(interval));
+	}
+
+	/**
+	 * Spread heartbeats by +-10%, so nodes started together don't stay in step
+	 */
+	private long jitter(long interval) {
+		return interval - interval / 10 + (long) (random.nextDouble() * interval / 5);
+	}
+
+	/**
+	 * @return Milliseconds between heartbeats of every node, for the
+	 * number of nodes known right now
+	 */
+	public long getInterval() {
+		long nodes = expiries.size() + 1;
+		long interval = nodes * 1000 / HEARTBEATS_PER_SECOND;
+		return Math.max(MIN_INTERVAL, Math.min(MAX_INTERVAL, interval));
+	}
+
+	/**
+	 * @param interval The heartbeat interval of the node
+	 * @return Milliseconds of silence after which the node is taken as gone
+	 */
+	public static long getTimeout(long interval) {
+		return interval * MISSED_HEARTBEATS + interval / 10;
+	}
+
+	/**
+	 * @return Nodes being tracked
+	 */
+	public int getTracked() {
+		return expiries.size();
+	}
+
+	public long getHeartbeatsSent() {
+		return heartbeatsSent.get();
+	}
+
+	/**
+	 * @return Nodes taken as gone after being silent
+	 */
+	public long getExpired() {
+		return expired.get();
+	}
+}
@@ -0,0 +1,197 @@
+/*	Solarys Chat - Local network UDP broadcaster chat
+ * 	Copyright 2018 Yeshe Santos García <civyshk@gmail.com>
+ *	
+ *	This file is part of Solarys Chat
+ *	
+ *	Solarys Chat is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.project104.chat.solaris;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket per source, so that a single flooding node can't take
+ * the whole receive path for itself. Every source may send a burst of
+ * packets, then as many per second as the refill rate allows.
+ *
+ * Buckets live in a fixed open addressing table of primitive arrays, so
+ * checking a packet never allocates. When the table fills up, buckets
+ * which have refilled completely are forgotten, as they hold no state
+ * worth keeping. Not thread safe, each receiving thread has its own.
+ */
+public class RateLimiter {
+	public static final int DEFAULT_BURST = 100;
+	public static final int DEFAULT_RATE = 50;
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	/** Tokens are counted in thousandths, to refill smoothly */
+	private static final long UNIT = 1000;
+
+	private final long burst;
+	private final long rate;
+	private final int maxEntries;
+	private final Clock clock;
+	private long[] keys;
+	private long[] tokens;
+	private long[] refilled;
+	private boolean[] used;
+	private long[] spareKeys;
+	private long[] spareTokens;
+	private long[] spareRefilled;
+	private boolean[] spareUsed;
+	private int entries;
+
+	private final AtomicLong dropped;
+	private final AtomicLong untracked;
+
+	/**
+	 * @param burst Packets a source may send at once
+	 * @param rate Packets per second a source may keep sending, 0 to disable limiting
+	 * @param capacity Most sources tracked at once
+	 */
+	public RateLimiter(int burst, int rate, int capacity) {
+		this(burst, rate, capacity, Clock.SYSTEM);
+	}
+
+	public RateLimiter(int burst, int rate, int capacity, Clock clock) {
+		this.clock = clock;
+		this.burst = burst * UNIT;
+		this.rate = rate;
+		this.maxEntries = capacity;
+		int size = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1) * 2;
+		this.keys = new long[size];
+		this.tokens = new long[size];
+		this.refilled = new long[size];
+		this.used = new boolean[size];
+		this.spareKeys = new long[size];
+		this.spareTokens = new long[size];
+		this.spareRefilled = new long[size];
+		this.spareUsed = new boolean[size];
+		this.dropped = new AtomicLong();
+		this.untracked = new AtomicLong();
+	}
+
+	/**
+	 * Take one token from the bucket of a source
+	 * @param source Any stable identity of the source, e.g. its address hash
+	 * @return false if the packet must be dropped
+	 */
+	public boolean tryAcquire(long source) {
+		if(rate <= 0) {
+			return true;
+		}
+		long now = clock.millis();
+		int index = find(source);
+		if(!used[index]) {
+			if(entries >= maxEntries) {
+				forgetFull(now);
+				index = find(source);
+				if(entries >= maxEntries) {
+					//too many sources at once, let them through rather than mix them up
+					untracked.incrementAndGet();
+					return true;
+				}
+			}
+			used[index] = true;
+			keys[index] = source;
+			tokens[index] = burst;
+			refilled[index] = now;
+			entries++;
+		}
+
+		long elapsed = now - refilled[index];
+		if(elapsed > 0) {
+			tokens[index] = Math.min(burst, tokens[index] + elapsed * rate);
+			refilled[index] = now;
+		}
+		if(tokens[index] < UNIT) {
+			dropped.incrementAndGet();
+			return false;
+		}
+		tokens[index] -= UNIT;
+		return true;
+	}
+
+	/**
+	 * @return The slot of the source, or the free slot where it would go
+	 */
+	private int find(long source) {
+		int mask = keys.length - 1;
+		int index = mix(source) & mask;
+		while(used[index] && keys[index] != source) {
+			index = (index + 1) & mask;
+		}
+		return index;
+	}
+
+	/**
+	 * Drop the buckets which are full by now, rebuilding the table into
+	 * the spare arrays so that no probe chain is broken
+	 */
+	private void forgetFull(long now) {
+		long[] oldKeys = keys;
+		long[] oldTokens = tokens;
+		long[] oldRefilled = refilled;
+		boolean[] oldUsed = used;
+		keys = spareKeys;
+		tokens = spareTokens;
+		refilled = spareRefilled;
+		used = spareUsed;
+		spareKeys = oldKeys;
+		spareTokens = oldTokens;
+		spareRefilled = oldRefilled;
+		spareUsed = oldUsed;
+		Arrays.fill(used, false);
+		entries = 0;
+		for(int i = 0; i < oldKeys.length; i++) {
+			if(!oldUsed[i] || oldTokens[i] + (now - oldRefilled[i]) * rate >= burst) {
+				continue;
+			}
+			int index = find(oldKeys[i]);
+			used[index] = true;
+			keys[index] = oldKeys[i];
+			tokens[index] = oldTokens[i];
+			refilled[index] = oldRefilled[i];
+			entries++;
+		}
+	}
+
+	private static int mix(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	/**
+	 * @return Packets rejected for going over their rate
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	/**
+	 * @return Packets let through without limit because the table was full
+	 */
+	public long getUntracked() {
+		return untracked.get();
+	}
+
+	/**
+	 * @return Sources being tracked right now
+	 */
+	public int getSources() {
+		return entries;
+	}
+}
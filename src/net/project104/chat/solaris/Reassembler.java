@@ -0,0 +1,191 @@
+/*	Solarys Chat - Local network UDP broadcaster chat
+ * 	Copyright 2018 Yeshe Santos García <civyshk@gmail.com>
+ *	
+ *	This file is part of Solarys Chat
+ *	
+ *	Solarys Chat is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.project104.chat.solaris;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rebuilds packets which were split in FRAGMENT packets because they
+ * didn't fit in one datagram.
+ *
+ * Memory is bounded: incomplete packets are dropped after TIMEOUT, and
+ * when the fragments kept exceed the byte budget, the oldest incomplete
+ * packets are dropped first.
+ */
+public class Reassembler {
+	/** A packet body is at most 64KiB, this is plenty even for tiny MTUs */
+	public static final int MAX_FRAGMENTS = 256;
+	public static final long TIMEOUT = 5000;
+
+	private static class Key {
+		final long sender;
+		final int id;
+
+		Key(long sender, int id) {
+			this.sender = sender;
+			this.id = id;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if(!(o instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) o;
+			return sender == other.sender && id == other.id;
+		}
+
+		@Override
+		public int hashCode() {
+			return Long.hashCode(sender) * 31 + id;
+		}
+	}
+
+	private class Partial {
+		final byte[][] pieces;
+		final Scheduler.Timeout timeout;
+		int received;
+		int length;
+
+		Partial(Key key, int count) {
+			this.pieces = new byte[count][];
+			this.timeout = timers.newTimeout(() -> expire(key));
+		}
+	}
+
+	private final Scheduler timers;
+	private final int maxBytes;
+	private final LinkedHashMap<Key, Partial> partials;
+	private int bytes;
+
+	private final AtomicLong completed;
+	private final AtomicLong expired;
+	private final AtomicLong evicted;
+
+	/**
+	 * @param timers Runs the expiration of incomplete packets
+	 * @param maxBytes Most fragment bytes to keep at once
+	 */
+	public Reassembler(Scheduler timers, int maxBytes) {
+		this.timers = timers;
+		this.maxBytes = maxBytes;
+		this.partials = new LinkedHashMap<>();
+		this.completed = new AtomicLong();
+		this.expired = new AtomicLong();
+		this.evicted = new AtomicLong();
+	}
+
+	/**
+	 * @param fragment A FRAGMENT packet. Its content is copied
+	 * @return The encoded original packet if this was its last missing
+	 * fragment, else null
+	 */
+	public synchronized ByteBuffer add(Packet fragment) {
+		int count = fragment.getFragmentCount();
+		int index = fragment.getFragmentIndex();
+		if(count < 1 || count > MAX_FRAGMENTS || index >= count) {
+			System.err.println(String.format("Received bad fragment %d/%d", index, count));
+			return null;
+		}
+
+		Key key = new Key(fragment.getSender(), fragment.getFragmentId());
+		Partial partial = partials.get(key);
+		if(partial == null) {
+			partial = new Partial(key, count);
+			partials.put(key, partial);
+			partial.timeout.schedule(TIMEOUT);
+		}else if(partial.pieces.length != count) {
+			return null;
+		}
+		if(partial.pieces[index] != null) {
+			return null;
+		}
+
+		byte[] piece = new byte[fragment.getContentLength()];
+		System.arraycopy(fragment.getContentData(), fragment.getContentOffset(), piece, 0, piece.length);
+		partial.pieces[index] = piece;
+		partial.received++;
+		partial.length += piece.length;
+		bytes += piece.length;
+
+		if(partial.received == count) {
+			remove(key, partial);
+			completed.incrementAndGet();
+			ByteBuffer result = ByteBuffer.allocate(partial.length);
+			for(byte[] p : partial.pieces) {
+				result.put(p);
+			}
+			result.flip();
+			return result;
+		}
+
+		Iterator<Map.Entry<Key, Partial>> it = partials.entrySet().iterator();
+		while(bytes > maxBytes && it.hasNext()) {
+			Map.Entry<Key, Partial> oldest = it.next();
+			if(oldest.getValue() == partial) {
+				continue;
+			}
+			it.remove();
+			forget(oldest.getValue());
+			evicted.incrementAndGet();
+		}
+		return null;
+	}
+
+	private void remove(Key key, Partial partial) {
+		partials.remove(key);
+		forget(partial);
+	}
+
+	private void forget(Partial partial) {
+		partial.timeout.cancel();
+		bytes -= partial.length;
+	}
+
+	private synchronized void expire(Key key) {
+		Partial partial = partials.get(key);
+		if(partial != null) {
+			remove(key, partial);
+			expired.incrementAndGet();
+		}
+	}
+
+	public long getCompleted() {
+		return completed.get();
+	}
+
+	/**
+	 * @return Incomplete packets dropped after TIMEOUT
+	 */
+	public long getExpired() {
+		return expired.get();
+	}
+
+	/**
+	 * @return Incomplete packets dropped to stay inside the memory budget
+	 */
+	public long getEvicted() {
+		return evicted.get();
+	}
+}
@@ -0,0 +1,330 @@
+/*	Solarys Chat - Local network UDP broadcaster chat
+ * 	Copyright 2018 Yeshe Santos García <civyshk@gmail.com>
+ *	
+ *	This file is part of Solarys Chat
+ *	
+ *	Solarys Chat is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.project104.chat.solaris;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Receive engine. One thread waits on a Selector for any number of
+ * non blocking DatagramChannels and hands their datagrams to a Listener.
+ * The thread only wakes up when there is data to read, and stopping it
+ * doesn't need any network round trip.
+ *
+ * On each wakeup every pending datagram of a channel is read, up to a
+ * cap, into one reused Batch, which goes to the Listener as a whole.
+ *
+ * Channels may be added or removed from any thread, they are
+ * (de)registered by the receiving thread itself on its next wakeup.
+ */
+public class Receiver extends Thread {
+	/** Largest UDP payload, so that no datagram is ever truncated */
+	public static final int BUFFER_SIZE = 65535;
+	public static final int DEFAULT_BATCH = 32;
+	/** Batch sizes are counted in buckets of 1, 2-3, 4-7 ... datagrams */
+	public static final int HISTOGRAM_BUCKETS = 8;
+
+	/**
+	 * Called from the receiving thread for each batch. The batch is
+	 * reused for the next one, so it must be consumed before returning
+	 */
+	public interface Listener {
+		/**
+		 * @return How many datagrams of the batch were dropped, whole or in part
+		 */
+		public int received(Batch batch);
+	}
+
+	/**
+	 * Datagrams read in one go, one after another in a single buffer
+	 */
+	public static final class Batch {
+		private final ByteBuffer buffer;
+		private final ByteBuffer view;
+		private final int[] offsets;
+		private final int[] lengths;
+		private final InetSocketAddress[] senders;
+		private int size;
+
+		public Batch(int maxSize) {
+			//room for a datagram of any size, plus a few of the usual ones
+			this.buffer = ByteBuffer.allocate(BUFFER_SIZE * 2);
+			this.view = buffer.duplicate();
+			this.offsets = new int[maxSize];
+			this.lengths = new int[maxSize];
+			this.senders = new InetSocketAddress[maxSize];
+		}
+
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * @return The i-th datagram, in a view which is reused by the next call
+		 */
+		public ByteBuffer get(int i) {
+			view.limit(offsets[i] + lengths[i]);
+			view.position(offsets[i]);
+			return view;
+		}
+
+		public InetSocketAddress getSender(int i) {
+			return senders[i];
+		}
+
+		public void clear() {
+			for(int i = 0; i < size; i++) {
+				senders[i] = null;
+			}
+			size = 0;
+			buffer.clear();
+		}
+
+		/**
+		 * @return false if it's full, or if it can't hold the largest datagram anymore
+		 */
+		public boolean hasRoom() {
+			return size < offsets.length && buffer.remaining() >= BUFFER_SIZE;
+		}
+
+		/**
+		 * Append a copy of the remaining bytes of data, for transports
+		 * which don't read from a channel
+		 * @return false if there's no room for it
+		 */
+		public boolean add(ByteBuffer data, InetSocketAddress from) {
+			if(size >= offsets.length || buffer.remaining() < data.remaining()) {
+				return false;
+			}
+			offsets[size] = buffer.position();
+			lengths[size] = data.remaining();
+			senders[size] = from;
+			buffer.put(data);
+			size++;
+			return true;
+		}
+	}
+
+	private final Listener listener;
+	private final Selector selector;
+	private final Batch batch;
+	private final Queue<DatagramChannel> toRegister;
+	private final Queue<DatagramChannel> toCancel;
+	private volatile boolean running;
+
+	private final AtomicLong datagrams;
+	private final AtomicLong dropped;
+	private final AtomicLongArray batchSizes;
+
+	public Receiver(Listener listener) throws IOException {
+		this(listener, "Solarys receiver", DEFAULT_BATCH);
+	}
+
+	/**
+	 * @param maxBatch Most datagrams read from a channel in one go
+	 */
+	public Receiver(Listener listener, String name, int maxBatch) throws IOException {
+		super(name);
+		setDaemon(true);
+		this.listener = listener;
+		this.selector = Selector.open();
+		this.batch = new Batch(Math.max(1, maxBatch));
+		this.toRegister = new ConcurrentLinkedQueue<>();
+		this.toCancel = new ConcurrentLinkedQueue<>();
+		this.datagrams = new AtomicLong();
+		this.dropped = new AtomicLong();
+		this.batchSizes = new AtomicLongArray(HISTOGRAM_BUCKETS);
+	}
+
+	/**
+	 * Start watching a channel. The channel is switched to non blocking mode
+	 * @param channel A bound DatagramChannel
+	 * @throws IOException If the channel can't be made non blocking
+	 */
+	public void addChannel(DatagramChannel channel) throws IOException {
+		channel.configureBlocking(false);
+		toRegister.add(channel);
+		selector.wakeup();
+	}
+
+	/**
+	 * Stop watching a channel and close it
+	 * @param channel A channel previously passed to addChannel()
+	 */
+	public void removeChannel(DatagramChannel channel) {
+		toCancel.add(channel);
+		selector.wakeup();
+	}
+
+	/**
+	 * Ask the receiving thread to quit. It returns at once, the thread
+	 * closes every watched channel before dying
+	 */
+	public void stopReceiver() {
+		running = false;
+		selector.wakeup();
+	}
+
+	private void updateRegistrations() {
+		DatagramChannel channel;
+		while((channel = toRegister.poll()) != null) {
+			try {
+				channel.register(selector, SelectionKey.OP_READ);
+			} catch (ClosedChannelException e) {
+				e.printStackTrace();
+			}
+		}
+		while((channel = toCancel.poll()) != null) {
+			SelectionKey key = channel.keyFor(selector);
+			if(key != null) {
+				key.cancel();
+			}
+			close(channel);
+		}
+	}
+
+	@Override
+	public void start() {
+		running = true;
+		super.start();
+	}
+
+	@Override
+	public void run() {
+		while(running) {
+			try {
+				selector.select();
+			} catch (IOException e) {
+				//TODO let someone know
+				e.printStackTrace();
+				break;
+			}
+			updateRegistrations();
+
+			Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+			while(it.hasNext()) {
+				SelectionKey key = it.next();
+				it.remove();
+				if(key.isValid() && key.isReadable()) {
+					read((DatagramChannel) key.channel());
+				}
+			}
+		}
+
+		for(SelectionKey key : selector.keys()) {
+			close((DatagramChannel) key.channel());
+		}
+		DatagramChannel channel;
+		while((channel = toRegister.poll()) != null) {
+			close(channel);
+		}
+		while((channel = toCancel.poll()) != null) {
+			close(channel);
+		}
+		try {
+			selector.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Read every pending datagram, until the batch is full, and hand them all over
+	 */
+	private void read(DatagramChannel channel) {
+		batch.clear();
+		ByteBuffer buffer = batch.buffer;
+		while(batch.hasRoom()) {
+			int offset = buffer.position();
+			SocketAddress from;
+			try {
+				from = channel.receive(buffer);
+			} catch (IOException e) {
+				e.printStackTrace();
+				break;
+			}
+			if(from == null) {
+				break;
+			}
+			batch.offsets[batch.size] = offset;
+			batch.lengths[batch.size] = buffer.position() - offset;
+			batch.senders[batch.size] = (InetSocketAddress) from;
+			batch.size++;
+		}
+		if(batch.size == 0) {
+			return;
+		}
+		datagrams.addAndGet(batch.size);
+		batchSizes.incrementAndGet(Math.min(HISTOGRAM_BUCKETS - 1, 31 - Integer.numberOfLeadingZeros(batch.size)));
+		int lost;
+		try {
+			lost = listener.received(batch);
+		}catch(RuntimeException e) {
+			//Losing the batch is better than losing the thread
+			e.printStackTrace();
+			lost = batch.size;
+		}
+		if(lost > 0) {
+			dropped.addAndGet(lost);
+		}
+	}
+
+	public long getDatagrams() {
+		return datagrams.get();
+	}
+
+	/**
+	 * @return Datagrams which the listener dropped, whole or in part
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	/**
+	 * @return How many batches had 1, 2-3, 4-7 ... datagrams. The last
+	 * bucket counts every batch above those
+	 */
+	public long[] getBatchSizes() {
+		long[] result = new long[HISTOGRAM_BUCKETS];
+		for(int i = 0; i < result.length; i++) {
+			result[i] = batchSizes.get(i);
+		}
+		return result;
+	}
+
+	private static void close(DatagramChannel channel) {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,512 @@
+/*	Solarys Chat - Local network UDP broadcaster chat
+ * 	Copyright 2018 Yeshe Santos García <civyshk@gmail.com>
+ *	
+ *	This file is part of Solarys Chat
+ *	
+ *	Solarys Chat is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.project104.chat.solaris;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reliable, ordered delivery of unicast packets over UDP.
+ *
+ * Every peer gets its own stream of sequence numbers. The receiver
+ * acknowledges the highest sequence it got in order (cumulative ACK) and
+ * delivers packets strictly in order, keeping early ones aside. The
+ * sender keeps at most WINDOW packets unacknowledged and retransmits the
+ * oldest one when the retransmission timeout expires, or at once after
+ * DUPLICATE_ACKS acknowledgements which don't move forward. While
+ * recovering, each ACK which leaves packets unacknowledged retransmits the
+ * next missing one. The timeout follows the measured round trip time
+ * (Jacobson/Karels, with Karn's rule and exponential backoff).
+ *
+ * Each peer has a single retransmission Timeout in the shared Scheduler,
+ * whatever the number of packets in flight.
+ *
+ * Every packet also tells the oldest sequence its sender still waits an
+ * ACK for. Anything before was acknowledged, maybe by an earlier run of
+ * the receiver, or given up, so the receiver stops waiting for it. A
+ * peer whose token changes was restarted: both directions start over.
+ *
+ * Packets are delivered outside the peer's lock, since the upper layer may
+ * block, while the thread sending to that peer would need the lock. Those
+ * ready while another thread is delivering are queued for that thread.
+ */
+public class Reliability {
+	public static final int WINDOW = 32;
+	public static final long INITIAL_RTO = 1000;
+	public static final long MIN_RTO = 200;
+	public static final long MAX_RTO = 10000;
+	public static final int MAX_TRANSMISSIONS = 8;
+	public static final int DUPLICATE_ACKS = 3;
+	/** Time an out of order packet waits for the missing ones before giving up on them */
+	public static final long GAP_TIMEOUT = 60000;
+
+	/**
+	 * The way to the network and to the upper layer
+	 */
+	public interface Link {
+		/**
+		 * Send an encoded packet to a peer
+		 */
+		public void transmit(ByteBuffer packet, InetAddress destination);
+
+		/**
+		 * Send an ACK for every sequence up to the given one
+		 */
+		public void sendAck(InetAddress destination, int sequence);
+
+		/**
+		 * Hand a reliable packet to the upper layer, always in order
+		 */
+		public void deliver(Packet packet, InetAddress from);
+	}
+
+	private static class Outgoing {
+		final int sequence;
+		final ByteBuffer data;
+		/** clock.nanos() of the last transmission */
+		long sentAt;
+		int transmissions;
+
+		Outgoing(int sequence, ByteBuffer data) {
+			this.sequence = sequence;
+			this.data = data;
+		}
+	}
+
+	private class Peer {
+		final InetAddress address;
+
+		int nextSequence = 1;
+		final ArrayDeque<Outgoing> inFlight = new ArrayDeque<>();
+		final ArrayDeque<Outgoing> waiting = new ArrayDeque<>();
+		final Scheduler.Timeout retransmitTimer;
+		long srtt = -1;
+		long rttvar;
+		long rto = INITIAL_RTO;
+		int duplicateAcks;
+		boolean recovering;
+
+		boolean hasRemote;
+		long remoteToken;
+		int expected = 1;
+		final TreeMap<Integer, Packet> early = new TreeMap<>();
+		final Scheduler.Timeout gapTimer;
+		/** In order, waiting for the thread which is delivering */
+		final ArrayDeque<Packet> ready = new ArrayDeque<>();
+		boolean delivering;
+
+		Peer(InetAddress address) {
+			this.address = address;
+			this.retransmitTimer = timers.newTimeout(() -> retransmit(this));
+			this.gapTimer = timers.newTimeout(() -> skipGap(this));
+		}
+	}
+
+	private final Link link;
+	private final PacketCodec codec;
+	private final Scheduler timers;
+	private final Clock clock;
+	private final Map<InetAddress, Peer> peers;
+
+	private final AtomicLong retransmissions;
+	private final AtomicLong failures;
+	private final AtomicLong skipped;
+
+	/**
+	 * @param link Where packets go and come from
+	 * @param codec Used to encode outgoing packets, only once for all their
+	 * transmissions, which just update the oldest unacknowledged sequence
+	 * @param timers Runs the retransmission timers
+	 * @param clock Times the round trips, with its monotonic nanos()
+	 */
+	public Reliability(Link link, PacketCodec codec, Scheduler timers, Clock clock) {
+		this.link = link;
+		this.codec = codec;
+		this.timers = timers;
+		this.clock = clock;
+		this.peers = new ConcurrentHashMap<>();
+		this.retransmissions = new AtomicLong();
+		this.failures = new AtomicLong();
+		this.skipped = new AtomicLong();
+	}
+
+	private Peer getPeer(InetAddress address) {
+		return peers.computeIfAbsent(address, Peer::new);
+	}
+
+	/**
+	 * @return true if a comes after b, allowing sequences to wrap around
+	 */
+	private static boolean after(int a, int b) {
+		return a - b > 0;
+	}
+
+	//Sending ---------------------------------------------\
+	/**
+	 * Send a packet reliably. It is given the next sequence of the
+	 * destination, and sent at once unless the window is full
+	 */
+	public void send(Packet packet, InetAddress destination) {
+		Peer peer = getPeer(destination);
+		synchronized(peer) {
+			packet.setFlags(packet.getFlags() | Packet.FLAG_RELIABLE);
+			packet.setReliableSequence(peer.nextSequence++);
+			packet.setOldestUnacked(peer.inFlight.isEmpty() ? packet.getReliableSequence() : peer.inFlight.peek().sequence);
+			ByteBuffer data = ByteBuffer.allocate(codec.encodedLength(packet));
+			codec.encode(packet, data);
+			data.flip();
+
+			Outgoing outgoing = new Outgoing(packet.getReliableSequence(), data);
+			if(peer.inFlight.size() < WINDOW) {
+				peer.inFlight.add(outgoing);
+				transmit(peer, outgoing);
+			}else {
+				peer.waiting.add(outgoing);
+			}
+		}
+	}
+
+	private void transmit(Peer peer, Outgoing outgoing) {
+		//What was acknowledged since the last transmission must not be waited for
+		codec.setOldestUnacked(outgoing.data, outgoing.sequence, peer.inFlight.peek().sequence);
+		outgoing.sentAt = clock.nanos();
+		outgoing.transmissions++;
+		link.transmit(outgoing.data.duplicate(), peer.address);
+		if(!peer.retransmitTimer.isScheduled()) {
+			peer.retransmitTimer.schedule(peer.rto);
+		}
+	}
+
+	/**
+	 * Called when a peer acknowledges every sequence up to the given one
+	 */
+	public void receivedAck(InetAddress from, int sequence) {
+		Peer peer = peers.get(from);
+		if(peer == null) {
+			return;
+		}
+		synchronized(peer) {
+			Outgoing newest = null;
+			boolean retransmitted = false;
+			while(!peer.inFlight.isEmpty() && !after(peer.inFlight.peek().sequence, sequence)) {
+				newest = peer.inFlight.poll();
+				retransmitted |= newest.transmissions > 1;
+			}
+			if(newest == null) {
+				if(!peer.inFlight.isEmpty() && ++peer.duplicateAcks == DUPLICATE_ACKS) {
+					peer.recovering = true;
+					retransmissions.incrementAndGet();
+					transmit(peer, peer.inFlight.peek());
+				}
+				return;
+			}
+			peer.duplicateAcks = 0;
+			//Karn: an ACK covering a retransmitted packet, or filling a gap, can't be timed
+			if(!retransmitted && newest.sequence == sequence) {
+				sampleRoundTrip(peer, (clock.nanos() - newest.sentAt) / 1000000);
+			}else {
+				//But it still shows the peer is reachable, so drop the backoff
+				peer.rto = computeTimeout(peer);
+			}
+			if(peer.recovering) {
+				if(peer.inFlight.isEmpty()) {
+					peer.recovering = false;
+				}else {
+					retransmissions.incrementAndGet();
+					transmit(peer, peer.inFlight.peek());
+				}
+			}
+
+			while(peer.inFlight.size() < WINDOW && !peer.waiting.isEmpty()) {
+				Outgoing outgoing = peer.waiting.poll();
+				peer.inFlight.add(outgoing);
+				transmit(peer, outgoing);
+			}
+			if(peer.inFlight.isEmpty()) {
+				peer.retransmitTimer.cancel();
+			}else {
+				peer.retransmitTimer.schedule(peer.rto);
+			}
+		}
+	}
+
+	private static void sampleRoundTrip(Peer peer, long rtt) {
+		if(peer.srtt < 0) {
+			peer.srtt = rtt;
+			peer.rttvar = rtt / 2;
+		}else {
+			peer.rttvar = (3 * peer.rttvar + Math.abs(peer.srtt - rtt)) / 4;
+			peer.srtt = (7 * peer.srtt + rtt) / 8;
+		}
+		peer.rto = computeTimeout(peer);
+	}
+
+	private static long computeTimeout(Peer peer) {
+		if(peer.srtt < 0) {
+			return INITIAL_RTO;
+		}
+		return Math.min(MAX_RTO, Math.max(MIN_RTO, peer.srtt + 4 * peer.rttvar));
+	}
+
+	private void retransmit(Peer peer) {
+		synchronized(peer) {
+			Outgoing oldest = peer.inFlight.peek();
+			if(oldest == null) {
+				return;
+			}
+			if(oldest.transmissions >= MAX_TRANSMISSIONS) {
+				int lost = peer.inFlight.size() + peer.waiting.size();
+				System.err.println(String.format("Giving up %d packets for %s", lost, peer.address));
+				failures.addAndGet(lost);
+				peer.inFlight.clear();
+				peer.waiting.clear();
+				peer.rto = INITIAL_RTO;
+				peer.recovering = false;
+				return;
+			}
+			peer.rto = Math.min(MAX_RTO, peer.rto * 2);
+			peer.recovering = true;
+			retransmissions.incrementAndGet();
+			transmit(peer, oldest);
+		}
+	}
+	//Sending ---------------------------------------------/
+
+	//Receiving -------------------------------------------\
+	/**
+	 * Called for every packet received with FLAG_RELIABLE. It is always
+	 * acknowledged, and delivered when every previous one has been
+	 * @param packet The packet, which may reference the receive buffer
+	 */
+	public void received(Packet packet, InetAddress from) {
+		Peer peer = getPeer(from);
+		int ack;
+		Packet direct = null;
+		boolean deliver;
+		synchronized(peer) {
+			boolean fresh = checkToken(peer, packet.getSender());
+
+			int oldest = packet.getOldestUnacked();
+			if(oldest != 0 && after(oldest, peer.expected)) {
+				skipTo(peer, oldest, !fresh);
+			}
+
+			int sequence = packet.getReliableSequence();
+			if(sequence == peer.expected) {
+				peer.expected++;
+				if(peer.delivering || !peer.ready.isEmpty()) {
+					peer.ready.add(copy(packet));
+				}else {
+					direct = packet;
+				}
+				moveEarly(peer);
+			}else if(after(sequence, peer.expected)) {
+				if(!peer.early.containsKey(sequence) && peer.early.size() < 2 * WINDOW) {
+					peer.early.put(sequence, copy(packet));
+				}
+				if(!peer.gapTimer.isScheduled()) {
+					peer.gapTimer.schedule(GAP_TIMEOUT);
+				}
+			}
+			ack = peer.expected - 1;
+			deliver = !peer.delivering && (direct != null || !peer.ready.isEmpty());
+			if(deliver) {
+				peer.delivering = true;
+			}
+		}
+		link.sendAck(from, ack);
+		if(deliver) {
+			if(direct != null) {
+				link.deliver(direct, from);
+			}
+			deliverReady(peer);
+		}
+	}
+
+	/**
+	 * Called for any packet with a sender token, to notice restarted peers
+	 * even if they send nothing reliable
+	 */
+	public void heard(InetAddress from, long token) {
+		Peer peer = peers.get(from);
+		if(peer == null) {
+			return;
+		}
+		synchronized(peer) {
+			checkToken(peer, token);
+		}
+	}
+
+	/**
+	 * @return true if nothing was received from this run of the peer yet
+	 */
+	private boolean checkToken(Peer peer, long token) {
+		if(peer.hasRemote && peer.remoteToken == token) {
+			return false;
+		}
+		boolean restarted = peer.hasRemote;
+		peer.hasRemote = true;
+		peer.remoteToken = token;
+		peer.expected = 1;
+		peer.early.clear();
+		peer.gapTimer.cancel();
+		if(restarted) {
+			//The new run has none of our packets and its own round trip
+			peer.srtt = -1;
+			peer.rttvar = 0;
+			peer.rto = INITIAL_RTO;
+			peer.duplicateAcks = 0;
+			for(Outgoing outgoing : peer.inFlight) {
+				outgoing.transmissions = 0;
+			}
+			if(!peer.inFlight.isEmpty()) {
+				peer.recovering = true;
+				retransmissions.incrementAndGet();
+				transmit(peer, peer.inFlight.peek());
+				peer.retransmitTimer.schedule(peer.rto);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * The sender no longer waits for anything before the given sequence.
+	 * Deliver what is early before it, and stop waiting for the rest
+	 * @param count false when those sequences were sent before this node
+	 * heard from the peer, they weren't lost
+	 */
+	private void skipTo(Peer peer, int sequence, boolean count) {
+		while(!peer.early.isEmpty() && after(sequence, peer.early.firstKey())) {
+			int first = peer.early.firstKey();
+			if(count) {
+				skipped.addAndGet(first - peer.expected);
+			}
+			peer.ready.add(peer.early.remove(first));
+			peer.expected = first + 1;
+		}
+		if(count) {
+			skipped.addAndGet(sequence - peer.expected);
+		}
+		peer.expected = sequence;
+		if(peer.early.isEmpty()) {
+			peer.gapTimer.cancel();
+		}
+	}
+
+	private static Packet copy(Packet packet) {
+		Packet copy = new Packet();
+		copy.copyFrom(packet);
+		return copy;
+	}
+
+	/**
+	 * Move the early packets which are now in order to the ready queue
+	 */
+	private void moveEarly(Peer peer) {
+		Packet next;
+		while((next = peer.early.remove(peer.expected)) != null) {
+			peer.expected++;
+			peer.ready.add(next);
+		}
+		if(peer.early.isEmpty()) {
+			peer.gapTimer.cancel();
+		}
+	}
+
+	/**
+	 * Deliver the ready queue until it's empty, called without the lock
+	 * by the thread which set delivering
+	 */
+	private void deliverReady(Peer peer) {
+		while(true) {
+			Packet next;
+			synchronized(peer) {
+				next = peer.ready.poll();
+				if(next == null) {
+					peer.delivering = false;
+					return;
+				}
+			}
+			link.deliver(next, peer.address);
+		}
+	}
+
+	/**
+	 * The missing packets didn't arrive in time, the sender must have
+	 * given up on them. Deliver whatever is waiting after the gap
+	 */
+	private void skipGap(Peer peer) {
+		synchronized(peer) {
+			if(peer.early.isEmpty()) {
+				return;
+			}
+			int first = peer.early.firstKey();
+			skipped.addAndGet(first - peer.expected);
+			peer.expected = first;
+			moveEarly(peer);
+			if(!peer.early.isEmpty()) {
+				peer.gapTimer.schedule(GAP_TIMEOUT);
+			}
+			if(peer.delivering) {
+				return;
+			}
+			peer.delivering = true;
+		}
+		deliverReady(peer);
+	}
+	//Receiving -------------------------------------------/
+
+	/**
+	 * @return Smoothed round trip time to a peer in milliseconds, or -1 if not measured yet
+	 */
+	public long getRoundTripTime(InetAddress address) {
+		Peer peer = peers.get(address);
+		if(peer == null) {
+			return -1;
+		}
+		synchronized(peer) {
+			return peer.srtt;
+		}
+	}
+
+	public long getRetransmissions() {
+		return retransmissions.get();
+	}
+
+	/**
+	 * @return Packets given up after MAX_TRANSMISSIONS
+	 */
+	public long getFailures() {
+		return failures.get();
+	}
+
+	/**
+	 * @return Incoming sequences never received and skipped, after
+	 * GAP_TIMEOUT or because the sender gave up on them
+	 */
+	public long getSkipped() {
+		return skipped.get();
+	}
+}
@@ -0,0 +1,421 @@
+/*	Solarys Chat - Local network UDP broadcaster chat
+ * 	Copyright 2018 Yeshe Santos García <civyshk@gmail.com>
+ *	
+ *	This file is part of Solarys Chat
+ *	
+ *	Solarys Chat is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.project104.chat.solaris;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The nodes known by the network layer, with their names, as carried
+ * by ROSTER packets. It mirrors the nodes of the Model, but it is kept
+ * on the network threads, which can't touch the Model.
+ *
+ * Every name has a version, raised by its owner each time it changes,
+ * so that views learnt from different nodes merge by keeping the highest.
+ * Nodes compare their views through a digest: the number of nodes and
+ * an order independent hash of every (address, version), this node
+ * included. When digests differ, a SUMMARY is sent with the same digest
+ * for each of BUCKETS buckets of addresses, and only the entries of the
+ * buckets which differ come back in a ROSTER. Either way the packets
+ * stay small however many nodes there are, and a ROSTER is split in
+ * pages of at most MAX_PAGE_LENGTH.
+ *
+ * A node removed after a LEAVE, or after being silent too long, leaves
+ * a tombstone with its version for TOMBSTONE_TIME. Until then it is
+ * only learnt again from the node itself, or with a higher version, not
+ * from other nodes which still list it.
+ *
+ * ROSTER content is a list of entries, the first one being the sender:
+ *
+ * <pre>
+ * 4   IPv4 address
+ * 4   name version
+ * 1   flags, ENTRY_BINARY
+ * 1   name length
+ * -   UTF-8 name
+ * </pre>
+ *
+ * SUMMARY content is the digest of each bucket in order: 4 bytes count
+ * and 8 bytes hash. HEARTBEAT content starts with the digest of every
+ * node, in the same format.
+ */
+public class Roster {
+	/** The node speaks the binary format */
+	public static final int ENTRY_BINARY = 0x01;
+	public static final int DIGEST_LENGTH = 12;
+	public static final int BUCKETS = 256;
+	public static final int SUMMARY_LENGTH = BUCKETS * DIGEST_LENGTH;
+	public static final int MAX_PAGE_LENGTH = 8192;
+	/** Long enough for every other node to have expired a removed node too */
+	public static final long TOMBSTONE_TIME = 2 * Presence.getTimeout(Presence.MAX_INTERVAL);
+	private static final int MAX_NAME_LENGTH = 0xFF;
+
+	public static class Entry {
+		private final InetAddress address;
+		private volatile String name;
+		private volatile int version;
+		private volatile boolean binary;
+
+		Entry(InetAddress address, String name, int version, boolean binary) {
+			this.address = address;
+			this.name = name;
+			this.version = version;
+			this.binary = binary;
+		}
+
+		public InetAddress getAddress() {
+			return address;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public int getVersion() {
+			return version;
+		}
+
+		public boolean isBinary() {
+			return binary;
+		}
+	}
+
+	/**
+	 * Called by decode() for each entry of a ROSTER
+	 */
+	public interface Visitor {
+		/**
+		 * @param address The address of the node, or null for the sender itself
+		 */
+		public void visit(InetAddress address, String name, int version, boolean binary);
+	}
+
+	private static class Tombstone {
+		final int version;
+		final long removedAt;
+
+		Tombstone(int version, long removedAt) {
+			this.version = version;
+			this.removedAt = removedAt;
+		}
+	}
+
+	private final Clock clock;
+	private final Map<InetAddress, Entry> entries;
+	/** Oldest first */
+	private final LinkedHashMap<InetAddress, Tombstone> tombstones;
+	/** Digest of the entries, kept up to date by update() and remove() */
+	private int digestCount;
+	private long digestHash;
+	private final int[] bucketCounts;
+	private final long[] bucketHashes;
+
+	/**
+	 * @param clock Ages the tombstones
+	 */
+	public Roster(Clock clock) {
+		this.clock = clock;
+		entries = new ConcurrentHashMap<>();
+		tombstones = new LinkedHashMap<>();
+		bucketCounts = new int[BUCKETS];
+		bucketHashes = new long[BUCKETS];
+	}
+
+	/**
+	 * @param version Version of the name, or 0 if unknown, which always
+	 * takes a different name
+	 * @param direct true if told by the node itself, false if listed by
+	 * another one
+	 * @return true if the node is new, or if its name changed
+	 */
+	public synchronized boolean update(InetAddress address, String name, int version, boolean binary, boolean direct) {
+		Entry entry = entries.get(address);
+		if(entry == null) {
+			pruneTombstones();
+			Tombstone tombstone = tombstones.get(address);
+			if(tombstone != null) {
+				if(!direct && (version == 0 || version <= tombstone.version)) {
+					return false;
+				}
+				tombstones.remove(address);
+			}
+			entry = new Entry(address, name, version, binary);
+			entries.put(address, entry);
+			addToDigest(entry);
+			return true;
+		}
+		entry.binary |= binary;
+		if(version != 0 && version <= entry.version) {
+			return false;
+		}
+		if(version != 0) {
+			removeFromDigest(entry);
+			entry.version = version;
+			addToDigest(entry);
+		}
+		if(name != null && !name.equals(entry.name)) {
+			entry.name = name;
+			return true;
+		}
+		return false;
+	}
+
+	public synchronized void remove(InetAddress address) {
+		Entry entry = entries.remove(address);
+		if(entry != null) {
+			removeFromDigest(entry);
+			pruneTombstones();
+			tombstones.put(address, new Tombstone(entry.version, clock.millis()));
+		}
+	}
+
+	private void pruneTombstones() {
+		long now = clock.millis();
+		Iterator<Tombstone> it = tombstones.values().iterator();
+		while(it.hasNext() && now - it.next().removedAt > TOMBSTONE_TIME) {
+			it.remove();
+		}
+	}
+
+	/**
+	 * @return Removed nodes still remembered
+	 */
+	public synchronized int getTombstones() {
+		return tombstones.size();
+	}
+
+	private void addToDigest(Entry entry) {
+		if(entry.address instanceof Inet4Address) {
+			long hash = hash(entry.address, entry.version);
+			int bucket = bucket(entry.address);
+			digestCount++;
+			digestHash ^= hash;
+			bucketCounts[bucket]++;
+			bucketHashes[bucket] ^= hash;
+		}
+	}
+
+	private void removeFromDigest(Entry entry) {
+		if(entry.address instanceof Inet4Address) {
+			long hash = hash(entry.address, entry.version);
+			int bucket = bucket(entry.address);
+			digestCount--;
+			digestHash ^= hash;
+			bucketCounts[bucket]--;
+			bucketHashes[bucket] ^= hash;
+		}
+	}
+
+	private static int bucket(InetAddress address) {
+		return (int) (hash(address, 0) >>> 56) & (BUCKETS - 1);
+	}
+
+	public Entry get(InetAddress address) {
+		return entries.get(address);
+	}
+
+	public boolean isBinary(InetAddress address) {
+		Entry entry = entries.get(address);
+		return entry != null && entry.isBinary();
+	}
+
+	public Collection<Entry> getEntries() {
+		return entries.values();
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return The digest of this view, as carried by a HEARTBEAT. It
+	 * costs the same however many nodes there are
+	 */
+	public synchronized byte[] digest(InetAddress selfAddress, int selfVersion) {
+		long hash = hash(selfAddress, selfVersion) ^ digestHash;
+		return ByteBuffer.allocate(DIGEST_LENGTH).putInt(1 + digestCount).putLong(hash).array();
+	}
+
+	/**
+	 * @return true if the digest in the content of a HEARTBEAT differs from
+	 * this view. Malformed digests are taken as equal
+	 */
+	public boolean differs(Packet heartbeat, byte[] digest) {
+		if(heartbeat.getContentLength() < DIGEST_LENGTH) {
+			return false;
+		}
+		byte[] data = heartbeat.getContentData();
+		int offset = heartbeat.getContentOffset();
+		for(int i = 0; i < DIGEST_LENGTH; i++) {
+			if(data[offset + i] != digest[i]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static long hash(InetAddress address, int version) {
+		byte[] bytes = address.getAddress();
+		long h = (ByteBuffer.wrap(bytes, bytes.length - 4, 4).getInt() & 0xFFFFFFFFL) << 32 | (version & 0xFFFFFFFFL);
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	/**
+	 * @return The content of the ROSTER pages listing this node first,
+	 * then every IPv4 node known
+	 */
+	public List<byte[]> encode(InetAddress selfAddress, String selfName, int selfVersion) {
+		return encode(selfAddress, selfName, selfVersion, null);
+	}
+
+	/**
+	 * @param buckets The buckets to list, as returned by differingBuckets(). Null for every one
+	 * @return The content of the ROSTER pages, each listing this node
+	 * first, then the IPv4 nodes of those buckets
+	 */
+	public List<byte[]> encode(InetAddress selfAddress, String selfName, int selfVersion, BitSet buckets) {
+		List<byte[]> pages = new ArrayList<>();
+		ByteBuffer buffer = ByteBuffer.allocate(MAX_PAGE_LENGTH);
+		put(buffer, selfAddress, selfName, selfVersion, true);
+		int first = buffer.position();
+		for(Entry entry : entries.values()) {
+			if(!(entry.address instanceof Inet4Address)
+					|| (buckets != null && !buckets.get(bucket(entry.address)))) {
+				continue;
+			}
+			if(buffer.remaining() < 10 + MAX_NAME_LENGTH) {
+				pages.add(Arrays.copyOf(buffer.array(), buffer.position()));
+				buffer.clear();
+				put(buffer, selfAddress, selfName, selfVersion, true);
+			}
+			put(buffer, entry.address, entry.name, entry.version, entry.binary);
+		}
+		if(pages.isEmpty() || buffer.position() > first) {
+			pages.add(Arrays.copyOf(buffer.array(), buffer.position()));
+		}
+		return pages;
+	}
+
+	private static void put(ByteBuffer buffer, InetAddress address, String name, int version, boolean binary) {
+		byte[] nameBytes = (name != null ? name : "").getBytes(StandardCharsets.UTF_8);
+		int nameLength = Math.min(nameBytes.length, MAX_NAME_LENGTH);
+		buffer.put(address instanceof Inet4Address ? address.getAddress() : new byte[4]);
+		buffer.putInt(version);
+		buffer.put((byte) (binary ? ENTRY_BINARY : 0));
+		buffer.put((byte) nameLength);
+		buffer.put(nameBytes, 0, nameLength);
+	}
+
+	/**
+	 * Read the content of a ROSTER packet
+	 * @return false if it is malformed. Entries before the error are visited anyway
+	 */
+	public static boolean decode(Packet packet, Visitor visitor) {
+		byte[] data = packet.getContentData();
+		int position = packet.getContentOffset();
+		int end = position + packet.getContentLength();
+		boolean first = true;
+		while(position < end) {
+			if(end - position < 10) {
+				return false;
+			}
+			ByteBuffer fields = ByteBuffer.wrap(data, position, 10);
+			fields.position(position + 4);
+			int version = fields.getInt();
+			int flags = fields.get() & 0xFF;
+			int nameLength = fields.get() & 0xFF;
+			if(end - position - 10 < nameLength) {
+				return false;
+			}
+			InetAddress address = first ? null : toAddress(data, position);
+			if(!first && address == null) {
+				return false;
+			}
+			String name = new String(data, position + 10, nameLength, StandardCharsets.UTF_8);
+			visitor.visit(address, name, version, (flags & ENTRY_BINARY) != 0);
+			position += 10 + nameLength;
+			first = false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return The content of a SUMMARY, with the digest of every bucket,
+	 * this node included
+	 */
+	public synchronized byte[] encodeSummary(InetAddress selfAddress, int selfVersion) {
+		ByteBuffer buffer = ByteBuffer.allocate(SUMMARY_LENGTH);
+		int selfBucket = bucket(selfAddress);
+		for(int i = 0; i < BUCKETS; i++) {
+			if(i == selfBucket) {
+				buffer.putInt(bucketCounts[i] + 1).putLong(bucketHashes[i] ^ hash(selfAddress, selfVersion));
+			}else {
+				buffer.putInt(bucketCounts[i]).putLong(bucketHashes[i]);
+			}
+		}
+		return buffer.array();
+	}
+
+	/**
+	 * @return The buckets whose digest in a SUMMARY differs from this
+	 * view, maybe none. Null if the SUMMARY is malformed
+	 */
+	public BitSet differingBuckets(Packet summary, InetAddress selfAddress, int selfVersion) {
+		if(summary.getContentLength() != SUMMARY_LENGTH) {
+			return null;
+		}
+		byte[] mine = encodeSummary(selfAddress, selfVersion);
+		byte[] data = summary.getContentData();
+		int offset = summary.getContentOffset();
+		BitSet differing = new BitSet(BUCKETS);
+		for(int i = 0; i < SUMMARY_LENGTH; i++) {
+			if(data[offset + i] != mine[i]) {
+				differing.set(i / DIGEST_LENGTH);
+				i = (i / DIGEST_LENGTH + 1) * DIGEST_LENGTH - 1;
+			}
+		}
+		return differing;
+	}
+
+	private static InetAddress toAddress(byte[] data, int position) {
+		try {
+			return InetAddress.getByAddress(Arrays.copyOfRange(data, position, position + 4));
+		} catch (UnknownHostException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,52 @@
+/*	Solarys Chat - Local network UDP broadcaster chat
+ * 	Copyright 2018 Yeshe Santos García <civyshk@gmail.com>
+ *	
+ *	This file is part of Solarys Chat
+ *	
+ *	Solarys Chat is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.project104.chat.solaris;
+
+/**
+ * Runs tasks after some time. Every timer of the network layer goes
+ * through one: a TimerWheel in real time, or a simulator in virtual time
+ */
+public interface Scheduler {
+	/**
+	 * A reusable timer. It can be scheduled again as many times as needed,
+	 * which replaces any previous schedule
+	 */
+	public interface Timeout {
+		public boolean isScheduled();
+
+		/**
+		 * Run the task after some time, replacing any previous schedule
+		 */
+		public void schedule(long delayMillis);
+
+		public void cancel();
+	}
+
+	/**
+	 * @return A Timeout for the task, not scheduled yet
+	 */
+	public Timeout newTimeout(Runnable task);
+
+	/**
+	 * Run a task once after some time
+	 * @return The Timeout, which can be cancelled or rescheduled
+	 */
+	public Timeout schedule(Runnable task, long delayMillis);
+}
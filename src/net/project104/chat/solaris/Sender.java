@@ -0,0 +1,288 @@
+/*	Solarys Chat - Local network UDP broadcaster chat
+ * 	Copyright 2018 Yeshe Santos García <civyshk@gmail.com>
+ *	
+ *	This file is part of Solarys Chat
+ *	
+ *	Solarys Chat is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.project104.chat.solaris;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Outbound stage. Every datagram of the NetManager goes through a bounded
+ * queue to this single thread, so that neither the GUI nor the receiving
+ * thread ever wait for the network. If the queue is full the datagram
+ * is refused at once instead of blocking the caller.
+ *
+ * When there is a Coalescer, this thread also drives its windows.
+ *
+ * A Sender may also have no thread at all, for simulations where
+ * nothing may run on its own: see the constructor with a Scheduler.
+ */
+public class Sender extends Thread {
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	private static class Outgoing {
+		final ByteBuffer datagram;
+		final InetAddress destination;
+		final boolean urgent;
+		final long queued;
+		final CompletableFuture<Boolean> done;
+
+		Outgoing(ByteBuffer datagram, InetAddress destination, boolean urgent, long queued) {
+			this.datagram = datagram;
+			this.destination = destination;
+			this.urgent = urgent;
+			this.queued = queued;
+			this.done = new CompletableFuture<>();
+		}
+	}
+
+	/** Wakes the thread up to stop. Interrupting it could close the channels it writes to */
+	private static final Outgoing STOP = new Outgoing(null, null, true, 0);
+
+	private final Coalescer.Output output;
+	private final Coalescer coalescer;
+	private final Clock clock;
+	private final BlockingQueue<Outgoing> queue;
+	/** Ends the Coalescer's windows when there is no thread, null otherwise */
+	private final Scheduler.Timeout flush;
+	private volatile boolean running;
+
+	private final AtomicLong sent;
+	private final AtomicLong failed;
+	private final AtomicLong refused;
+	private final AtomicLong maxDepth;
+	private final AtomicLong totalLatency;
+	private final AtomicLong maxLatency;
+
+	/**
+	 * @param output Sends each datagram, from this thread
+	 * @param capacity Most datagrams waiting at once
+	 * @param coalescer Packs datagrams before they reach the output, or null.
+	 * It must have been built with the same output and clock
+	 */
+	public Sender(Coalescer.Output output, int capacity, Coalescer coalescer, Clock clock) {
+		this(output, coalescer, clock, new ArrayBlockingQueue<>(capacity), null);
+	}
+
+	/**
+	 * A Sender which is never started. Each datagram is sent, or handed
+	 * to the Coalescer, on the thread which queues it, and the Coalescer's
+	 * windows end on the scheduler
+	 */
+	public Sender(Coalescer.Output output, Coalescer coalescer, Clock clock, Scheduler scheduler) {
+		this(output, coalescer, clock, null, scheduler);
+		running = true;
+	}
+
+	private Sender(Coalescer.Output output, Coalescer coalescer, Clock clock, BlockingQueue<Outgoing> queue, Scheduler scheduler) {
+		super("Solarys sender");
+		setDaemon(true);
+		this.output = output;
+		this.coalescer = coalescer;
+		this.clock = clock;
+		this.queue = queue;
+		this.flush = scheduler != null ? scheduler.newTimeout(this::flushExpired) : null;
+		this.sent = new AtomicLong();
+		this.failed = new AtomicLong();
+		this.refused = new AtomicLong();
+		this.maxDepth = new AtomicLong();
+		this.totalLatency = new AtomicLong();
+		this.maxLatency = new AtomicLong();
+	}
+
+	/**
+	 * Queue a datagram, or a packet for the Coalescer. Never blocks
+	 * @param destination The address to send to, or null for the whole network
+	 * @param urgent false if the packet may wait a little to travel with others
+	 * @return Completed with true once sent, or with false if it couldn't
+	 * be sent or the queue was full
+	 */
+	public CompletableFuture<Boolean> send(ByteBuffer datagram, InetAddress destination, boolean urgent) {
+		Outgoing outgoing = new Outgoing(datagram, destination, urgent, clock.nanos());
+		if(flush != null) {
+			sendNow(outgoing);
+			return outgoing.done;
+		}
+		if(!running || !queue.offer(outgoing)) {
+			refused.incrementAndGet();
+			outgoing.done.complete(false);
+			return outgoing.done;
+		}
+		int depth = queue.size();
+		long max;
+		while(depth > (max = maxDepth.get()) && !maxDepth.compareAndSet(max, depth));
+		return outgoing.done;
+	}
+
+	@Override
+	public void start() {
+		running = true;
+		super.start();
+	}
+
+	/**
+	 * Send everything already queued and end the thread
+	 */
+	public void stopSender() {
+		running = false;
+		if(flush != null) {
+			synchronized(this) {
+				flush.cancel();
+				if(coalescer != null) {
+					coalescer.flushAll();
+				}
+			}
+			return;
+		}
+		queue.offer(STOP);
+	}
+
+	private synchronized void sendNow(Outgoing outgoing) {
+		if(!running) {
+			refused.incrementAndGet();
+			outgoing.done.complete(false);
+			return;
+		}
+		handle(outgoing);
+		flushExpired();
+	}
+
+	/**
+	 * Without a thread, send what's due and wait on the scheduler for the rest
+	 */
+	private synchronized void flushExpired() {
+		if(coalescer == null || !running) {
+			return;
+		}
+		long now = clock.nanos();
+		long deadline = coalescer.flushExpired(now);
+		if(deadline == Long.MAX_VALUE) {
+			flush.cancel();
+		}else {
+			flush.schedule((deadline - now + 999999) / 1000000);
+		}
+	}
+
+	@Override
+	public void run() {
+		long deadline = Long.MAX_VALUE;
+		while(running) {
+			Outgoing outgoing;
+			try {
+				if(deadline == Long.MAX_VALUE) {
+					outgoing = queue.take();
+				}else {
+					outgoing = queue.poll(deadline - clock.nanos(), TimeUnit.NANOSECONDS);
+				}
+			} catch (InterruptedException e) {
+				break;
+			}
+			while(outgoing != null) {
+				if(outgoing != STOP) {
+					handle(outgoing);
+				}
+				outgoing = queue.poll();
+			}
+			if(coalescer != null) {
+				deadline = coalescer.flushExpired(clock.nanos());
+			}
+		}
+
+		Outgoing outgoing;
+		while((outgoing = queue.poll()) != null) {
+			if(outgoing != STOP) {
+				handle(outgoing);
+			}
+		}
+		if(coalescer != null) {
+			coalescer.flushAll();
+		}
+	}
+
+	private void handle(Outgoing outgoing) {
+		if(coalescer != null) {
+			coalescer.add(outgoing.datagram, outgoing.destination, outgoing.urgent, ok -> done(outgoing, ok));
+			return;
+		}
+		boolean ok;
+		try {
+			ok = output.transmit(outgoing.datagram, outgoing.destination);
+		}catch(RuntimeException e) {
+			e.printStackTrace();
+			ok = false;
+		}
+		done(outgoing, ok);
+	}
+
+	private void done(Outgoing outgoing, boolean ok) {
+		long latency = clock.nanos() - outgoing.queued;
+		totalLatency.addAndGet(latency);
+		long max;
+		while(latency > (max = maxLatency.get()) && !maxLatency.compareAndSet(max, latency));
+		(ok ? sent : failed).incrementAndGet();
+		outgoing.done.complete(ok);
+	}
+
+	/**
+	 * @return Datagrams waiting in the queue right now
+	 */
+	public int getQueueDepth() {
+		return queue != null ? queue.size() : 0;
+	}
+
+	public long getMaxQueueDepth() {
+		return maxDepth.get();
+	}
+
+	public long getSent() {
+		return sent.get();
+	}
+
+	public long getFailed() {
+		return failed.get();
+	}
+
+	/**
+	 * @return Datagrams refused because the queue was full or the sender stopped
+	 */
+	public long getRefused() {
+		return refused.get();
+	}
+
+	/**
+	 * @return Mean time from queueing to sending, in microseconds. It
+	 * includes the time spent waiting in the Coalescer
+	 */
+	public long getAverageLatency() {
+		long count = sent.get() + failed.get();
+		return count == 0 ? 0 : totalLatency.get() / count / 1000;
+	}
+
+	/**
+	 * @return Longest time from queueing to sending, in microseconds
+	 */
+	public long getMaxLatency() {
+		return maxLatency.get() / 1000;
+	}
+}
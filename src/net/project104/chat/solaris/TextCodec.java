@@ -0,0 +1,239 @@
+/*	Solarys Chat - Local network UDP broadcaster chat
+ * 	Copyright 2018 Yeshe Santos García <civyshk@gmail.com>
+ *	
+ *	This file is part of Solarys Chat
+ *	
+ *	Solarys Chat is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.project104.chat.solaris;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The original, human readable wire format. A packet is one UTF-8 line:
+ *
+ * <pre>
+ * {signing} JOIN  NAME={name}
+ * {signing} HELLO NAME={name}
+ * {signing} LEAVE CONTENT={bye message}
+ * {signing} MSG   PUBLIC={TRUE|FALSE} AUTODELETE={seconds} CONTENT={message}
+ * </pre>
+ *
+ * Kept so that older clients can still be talked to. It has no room for
+ * a sequence number, so decoded packets always get 0.
+ */
+public class TextCodec implements PacketCodec {
+	private static final byte SPACE = ' ';
+	private static final byte[] MSG   = ascii("MSG");
+	private static final byte[] JOIN  = ascii("JOIN");
+	private static final byte[] LEAVE = ascii("LEAVE");
+	private static final byte[] HELLO = ascii("HELLO");
+	private static final byte[] NAME       = ascii("NAME=");
+	private static final byte[] CONTENT    = ascii("CONTENT=");
+	private static final byte[] PUBLIC     = ascii("PUBLIC=");
+	private static final byte[] AUTODELETE = ascii("AUTODELETE=");
+	private static final byte[] TRUE = ascii("TRUE");
+
+	private final String signing;
+	private final byte[] signingBytes;
+	private final long token;
+
+	/**
+	 * @param signing The text this node puts in front of every packet
+	 * @param token The sender token given to packets signed with signing
+	 */
+	public TextCodec(String signing, long token) {
+		this.signing = signing;
+		this.signingBytes = signing.getBytes(StandardCharsets.UTF_8);
+		this.token = token;
+	}
+
+	private static byte[] ascii(String text) {
+		return text.getBytes(StandardCharsets.US_ASCII);
+	}
+
+	private String toText(Packet packet) {
+		String content = packet.getContent();
+		switch(packet.getCommand()) {
+			case Packet.MSG:   return String.format("%s MSG PUBLIC=%s AUTODELETE=%d CONTENT=%s",
+					signing, packet.isPublic() ? "TRUE" : "FALSE", packet.getAutoDelete(), content);
+			case Packet.JOIN:  return String.format("%s JOIN NAME=%s", signing, content);
+			case Packet.LEAVE: return String.format("%s LEAVE CONTENT=%s", signing, content);
+			case Packet.HELLO: return String.format("%s HELLO NAME=%s", signing, content);
+			default: throw new IllegalArgumentException("Command not supported by the text format: " + packet.getCommand());
+		}
+	}
+
+	@Override
+	public int encodedLength(Packet packet) {
+		return toText(packet).getBytes(StandardCharsets.UTF_8).length;
+	}
+
+	@Override
+	public void encode(Packet packet, ByteBuffer buffer) {
+		buffer.put(toText(packet).getBytes(StandardCharsets.UTF_8));
+	}
+
+	/*
+	 * Decoding works on the bytes of the buffer, without building Strings
+	 * nor splitting them, so that nothing is allocated per packet
+	 */
+	@Override
+	public boolean decode(ByteBuffer buffer, Packet packet) {
+		packet.clear();
+		byte[] data = buffer.array();
+		int start = buffer.arrayOffset() + buffer.position();
+		int end = buffer.arrayOffset() + buffer.limit();
+		buffer.position(buffer.limit());
+
+		int signingEnd = indexOf(data, start, end, SPACE);
+		int commandEnd = signingEnd < 0 ? -1 : indexOf(data, signingEnd + 1, end, SPACE);
+		if(commandEnd < 0) {
+			System.err.println("Received command with erroneous length");
+			return false;
+		}
+		if(regionEquals(data, start, signingEnd, signingBytes)) {
+			packet.setSender(token);
+		}else {
+			packet.setSender(hash(data, start, signingEnd));
+		}
+
+		int fieldsStart = commandEnd + 1;
+		if(regionEquals(data, signingEnd + 1, commandEnd, MSG)) {
+			packet.setCommand(Packet.MSG);
+			return decodeMsg(data, fieldsStart, end, packet);
+		}else if(regionEquals(data, signingEnd + 1, commandEnd, JOIN)) {
+			packet.setCommand(Packet.JOIN);
+			decodeValue(data, fieldsStart, end, NAME, packet);
+		}else if(regionEquals(data, signingEnd + 1, commandEnd, LEAVE)) {
+			packet.setCommand(Packet.LEAVE);
+			decodeValue(data, fieldsStart, end, CONTENT, packet);
+		}else if(regionEquals(data, signingEnd + 1, commandEnd, HELLO)) {
+			packet.setCommand(Packet.HELLO);
+			decodeValue(data, fieldsStart, end, NAME, packet);
+		}else {
+			System.err.println("Received bad command");
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * MSG fields are PUBLIC and AUTODELETE, each one ending at a space,
+	 * and CONTENT, which takes the rest of the packet
+	 */
+	private boolean decodeMsg(byte[] data, int from, int end, Packet packet) {
+		int fields = 0;
+		while(from < end) {
+			int fieldEnd = fields < 2 ? indexOf(data, from, end, SPACE) : -1;
+			if(fieldEnd < 0) {
+				fieldEnd = end;
+			}
+			if(startsWith(data, from, fieldEnd, PUBLIC)) {
+				if(regionEquals(data, from + PUBLIC.length, fieldEnd, TRUE)) {
+					packet.setFlags(packet.getFlags() | Packet.FLAG_PUBLIC);
+				}
+			}else if(startsWith(data, from, fieldEnd, AUTODELETE)) {
+				int value = 0;
+				boolean negative = false;
+				for(int i = from + AUTODELETE.length; i < fieldEnd; i++) {
+					if(data[i] == '-' && i == from + AUTODELETE.length) {
+						negative = true;
+					}else if(data[i] >= '0' && data[i] <= '9') {
+						value = value * 10 + (data[i] - '0');
+					}else {
+						System.err.println("Received bad AUTODELETE value");
+						return false;
+					}
+				}
+				packet.setAutoDelete(negative ? -value : value);
+			}else if(startsWith(data, from, fieldEnd, CONTENT)) {
+				setTrimmedContent(data, from + CONTENT.length, fieldEnd, packet);
+			}
+			fields++;
+			from = fieldEnd + 1;
+		}
+		if(fields != 3) {
+			System.err.println(String.format("Received bad message with %d fields", fields));
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Nothing to update, text packets carry no reliable sequence
+	 */
+	@Override
+	public void setOldestUnacked(ByteBuffer encoded, int reliableSequence, int oldestUnacked) {
+	}
+
+	private static void decodeValue(byte[] data, int from, int end, byte[] key, Packet packet) {
+		if(startsWith(data, from, end, key)) {
+			setTrimmedContent(data, from + key.length, end, packet);
+		}
+	}
+
+	/**
+	 * Same as String.trim(), on UTF-8 bytes: multibyte characters never
+	 * contain bytes lower than 0x80, so no character can be cut in half
+	 */
+	private static void setTrimmedContent(byte[] data, int from, int end, Packet packet) {
+		while(from < end && (data[from] & 0xFF) <= ' ') {
+			from++;
+		}
+		while(end > from && (data[end - 1] & 0xFF) <= ' ') {
+			end--;
+		}
+		packet.setContent(data, from, end - from);
+	}
+
+	private static int indexOf(byte[] data, int from, int end, byte b) {
+		for(int i = from; i < end; i++) {
+			if(data[i] == b) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean regionEquals(byte[] data, int from, int end, byte[] expected) {
+		return end - from == expected.length && startsWith(data, from, end, expected);
+	}
+
+	private static boolean startsWith(byte[] data, int from, int end, byte[] prefix) {
+		if(end - from < prefix.length) {
+			return false;
+		}
+		for(int i = 0; i < prefix.length; i++) {
+			if(data[from + i] != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * 64-bit FNV-1a, used as the sender token of foreign signings
+	 */
+	private static long hash(byte[] data, int from, int end) {
+		long hash = 0xcbf29ce484222325L;
+		for(int i = from; i < end; i++) {
+			hash ^= data[i] & 0xFF;
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+}
@@ -0,0 +1,211 @@
+/*	Solarys Chat - Local network UDP broadcaster chat
+ * 	Copyright 2018 Yeshe Santos García <civyshk@gmail.com>
+ *	
+ *	This file is part of Solarys Chat
+ *	
+ *	Solarys Chat is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.project104.chat.solaris;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashed timing wheel. Every timer of the network layer shares this single
+ * thread: scheduling, rescheduling and cancelling a Timeout are O(1), as
+ * a Timeout is just unlinked from one bucket and linked into another.
+ * Precision is one tick. Ticks follow the monotonic clock.nanos(), so
+ * stepping the wall clock neither freezes nor rushes the timers.
+ *
+ * Tasks run on the wheel thread, so they must be short and never block.
+ */
+public class TimerWheel extends Thread implements Scheduler {
+
+	public final class Timeout implements Scheduler.Timeout {
+		private final Runnable task;
+		private long deadlineTick;
+		private Timeout previous;
+		private Timeout next;
+		private int bucket = -1;
+
+		private Timeout(Runnable task) {
+			this.task = task;
+		}
+
+		@Override
+		public boolean isScheduled() {
+			synchronized(TimerWheel.this) {
+				return bucket >= 0;
+			}
+		}
+
+		@Override
+		public void schedule(long delayMillis) {
+			TimerWheel.this.schedule(this, delayMillis);
+		}
+
+		@Override
+		public void cancel() {
+			TimerWheel.this.cancel(this);
+		}
+	}
+
+	private final Clock clock;
+	private final long tickMillis;
+	private final long tickNanos;
+	private final Timeout[] buckets;
+	private final int mask;
+	private long startTime;
+	private long currentTick;
+	private volatile boolean running;
+
+	/**
+	 * @param tickMillis Resolution of the timers
+	 * @param wheelSize Number of buckets, rounded up to a power of 2
+	 */
+	public TimerWheel(long tickMillis, int wheelSize) {
+		this(Clock.SYSTEM, tickMillis, wheelSize);
+	}
+
+	/**
+	 * @param clock The thread still sleeps in real time, but deadlines
+	 * are taken from this clock
+	 */
+	public TimerWheel(Clock clock, long tickMillis, int wheelSize) {
+		super("Solarys timers");
+		setDaemon(true);
+		int size = Integer.highestOneBit(Math.max(2, wheelSize) * 2 - 1);
+		this.clock = clock;
+		this.tickMillis = tickMillis;
+		this.tickNanos = tickMillis * 1000000;
+		this.buckets = new Timeout[size];
+		this.mask = size - 1;
+		this.startTime = clock.nanos();
+		this.currentTick = 0;
+	}
+
+	@Override
+	public Timeout newTimeout(Runnable task) {
+		return new Timeout(task);
+	}
+
+	@Override
+	public Timeout schedule(Runnable task, long delayMillis) {
+		Timeout timeout = new Timeout(task);
+		schedule(timeout, delayMillis);
+		return timeout;
+	}
+
+	private synchronized void schedule(Timeout timeout, long delayMillis) {
+		unlink(timeout);
+		long ticks = Math.max(1, (delayMillis + tickMillis - 1) / tickMillis);
+		timeout.deadlineTick = currentTick + ticks;
+		link(timeout, (int) (timeout.deadlineTick & mask));
+	}
+
+	private synchronized void cancel(Timeout timeout) {
+		unlink(timeout);
+	}
+
+	private void link(Timeout timeout, int bucket) {
+		Timeout head = buckets[bucket];
+		timeout.previous = null;
+		timeout.next = head;
+		if(head != null) {
+			head.previous = timeout;
+		}
+		buckets[bucket] = timeout;
+		timeout.bucket = bucket;
+	}
+
+	private void unlink(Timeout timeout) {
+		if(timeout.bucket < 0) {
+			return;
+		}
+		if(timeout.previous != null) {
+			timeout.previous.next = timeout.next;
+		}else {
+			buckets[timeout.bucket] = timeout.next;
+		}
+		if(timeout.next != null) {
+			timeout.next.previous = timeout.previous;
+		}
+		timeout.previous = null;
+		timeout.next = null;
+		timeout.bucket = -1;
+	}
+
+	/**
+	 * Expire every timeout due up to the given time and run their tasks
+	 * on the calling thread
+	 * @param now Current time in nanoseconds, from clock.nanos()
+	 */
+	public void advanceTo(long now) {
+		List<Timeout> expired = new ArrayList<>();
+		synchronized(this) {
+			long targetTick = (now - startTime) / tickNanos;
+			while(currentTick < targetTick) {
+				currentTick++;
+				Timeout timeout = buckets[(int) (currentTick & mask)];
+				while(timeout != null) {
+					Timeout next = timeout.next;
+					if(timeout.deadlineTick <= currentTick) {
+						unlink(timeout);
+						expired.add(timeout);
+					}
+					timeout = next;
+				}
+			}
+		}
+		for(Timeout timeout : expired) {
+			try {
+				timeout.task.run();
+			}catch(RuntimeException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	@Override
+	public void start() {
+		running = true;
+		super.start();
+	}
+
+	public void stopWheel() {
+		running = false;
+		interrupt();
+	}
+
+	@Override
+	public void run() {
+		while(running) {
+			long nextTickTime;
+			synchronized(this) {
+				nextTickTime = startTime + (currentTick + 1) * tickNanos;
+			}
+			long sleep = nextTickTime - clock.nanos();
+			if(sleep > 0) {
+				try {
+					TimeUnit.NANOSECONDS.sleep(sleep);
+				} catch (InterruptedException e) {
+					continue;
+				}
+			}
+			advanceTo(clock.nanos());
+		}
+	}
+}
@@ -0,0 +1,510 @@
+/*	Solarys Chat - Local network UDP broadcaster chat
+ * 	Copyright 2018 Yeshe Santos García <civyshk@gmail.com>
+ *	
+ *	This file is part of Solarys Chat
+ *	
+ *	Solarys Chat is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.project104.chat.solaris;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.net.SocketOption;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+import net.project104.chat.solaris.NetConfig.SendMode;
+import net.project104.chat.solaris.NetConfig.Transport;
+
+/**
+ * The real network: UDP datagrams on DEFAULT_PORT, public ones sent to
+ * broadcast addresses or to a multicast group according to NetConfig.
+ * The network interfaces are watched, and the sockets of those which
+ * change are opened again
+ */
+public class UdpTransport implements DatagramTransport {
+	/** Replaced as a whole when the network changes, never modified */
+	private volatile List<InetAddress> broadcasts = new ArrayList<InetAddress>();
+	private volatile List<BroadcastDomain> domains = new ArrayList<BroadcastDomain>();
+	private List<MulticastLink> multicastLinks = new CopyOnWriteArrayList<MulticastLink>();
+	private volatile InetAddress broadcast = null;
+	
+	private final NetConfig config;
+	private volatile NetworkSnapshot network;
+	private NetworkWatcher watcher;
+	private Listener listener;
+	/** Listening at DEFAULT_PORT while started, and the group it joined */
+	private DatagramChannel serverChannel;
+	private InetAddress multicastGroup;
+	/** One per receiving socket while started, null when stopped */
+	private Receiver[] servers;
+	/** Sockets of the shards after the first one, and the address they're bound to */
+	private DatagramChannel[] unicastChannels;
+	private InetAddress unicastAddress;
+	private final List<Receiver.Listener> shards;
+	private final int shardCount;
+	private DatagramSocket socket;
+	
+	/**
+	 * @param network The interfaces of this host, which may be scanned
+	 * in the background with NetworkSnapshot.scanAsync()
+	 */
+	public UdpTransport(NetConfig config, NetworkSnapshot network) {
+		this.config = config;
+		this.network = network;
+		this.servers = null;
+		this.shards = new ArrayList<>();
+		this.shardCount = Math.max(1, config.getReceiveShards());
+		try {
+			socket = new DatagramSocket();
+		} catch (SocketException e) {
+			// TODO let caller know
+			e.printStackTrace();
+		}
+		generateBroadcasts();
+	}
+	
+	@Override
+	public void open(Listener listener, Scheduler timers, Executor executor) {
+		this.listener = listener;
+		if(config.getWatchInterval() > 0) {
+			watcher = new NetworkWatcher(timers, executor, network, config.getWatchInterval(), this::networkChanged);
+			watcher.start();
+		}
+	}
+	
+	@Override
+	public InetAddress getLocalAddress() {
+		return network.getLocalAddress();
+	}
+	
+	@Override
+	public int getMtu() {
+		return network.getMtu();
+	}
+	
+	public InetAddress getBroadcastAddress() {
+		if(broadcast == null) {
+			return getBestBroadcastAddress();
+		}else {
+			return broadcast;
+		}
+	}
+	
+	@Override
+	public List<InetAddress> getBroadcasts(){
+		return broadcasts;
+	}
+
+	@Override
+	public void setBroadcast(InetAddress broadcast) {
+		this.broadcast = broadcast;
+	}
+	
+	/**
+	 * @return Every non overlapping broadcast domain of this host, which
+	 * are the destinations of public packets in SendMode.FAN_OUT
+	 */
+	public List<BroadcastDomain> getBroadcastDomains(){
+		return domains;
+	}
+
+	/**
+	 * Try to return the best looking broadcast address, according
+	 * to similarity to the ip address of the local node
+	 * @return The best broadcast address it finds
+	 */
+	private InetAddress getBestBroadcastAddress() {
+		if(!broadcasts.isEmpty()) {
+			return broadcasts.get(0);
+		}
+		
+		return null;
+	}
+
+	/**
+	 * Fill broadcasts and domains from the snapshot of the interfaces.
+	 * The broadcast address of the local address comes first. Domains
+	 * which are still in the snapshot keep their sockets, the rest are closed
+	 */
+	private synchronized void generateBroadcasts() {
+		List<InetAddress> broadcasts = new ArrayList<>();
+		List<BroadcastDomain> domains = new ArrayList<>();
+		List<BroadcastDomain> previous = this.domains;
+		for(NetworkSnapshot.Entry entry : network.getEntries()) {
+			if(!broadcasts.contains(entry.getBroadcast())) {
+				broadcasts.add(entry.getBroadcast());
+			}
+			BroadcastDomain domain = null;
+			for(BroadcastDomain old : previous) {
+				if(old.isOn(entry)) {
+					domain = old;
+					break;
+				}
+			}
+			if(domain == null) {
+				domain = new BroadcastDomain(entry.getNetworkInterface(), entry.getInterfaceAddress());
+			}
+			addBroadcastDomain(domains, domain);
+		}
+		this.broadcasts = broadcasts;
+		this.domains = domains;
+		for(BroadcastDomain old : previous) {
+			if(!domains.contains(old)) {
+				old.close();
+			}
+		}
+	}
+
+	/**
+	 * Keep only the widest of overlapping domains, a broadcast there
+	 * already reaches the narrower ones
+	 */
+	private static void addBroadcastDomain(List<BroadcastDomain> domains, BroadcastDomain domain) {
+		Iterator<BroadcastDomain> it = domains.iterator();
+		while(it.hasNext()) {
+			BroadcastDomain other = it.next();
+			if(other.contains(domain)) {
+				return;
+			}else if(domain.contains(other)) {
+				it.remove();
+			}
+		}
+		domains.add(domain);
+	}
+
+	/**
+	 * The interfaces changed. Sockets on addresses which are gone are closed,
+	 * new ones are opened, and the rest keep working untouched
+	 */
+	private synchronized void networkChanged(NetworkSnapshot previous, NetworkSnapshot current) {
+		network = current;
+		generateBroadcasts();
+		if(broadcast != null && !broadcasts.contains(broadcast)) {
+			broadcast = null;
+		}
+		if(serverChannel != null && multicastGroup != null) {
+			updateMulticastLinks();
+		}
+		if(unicastChannels != null) {
+			rebindShards();
+		}
+		listener.networkChanged();
+	}
+
+	/**
+	 * Listen at DEFAULT_PORT. With several receive shards, each one gets its
+	 * own socket on the port and its own thread. The first socket is bound
+	 * to every address, and it's the only one getting broadcast and
+	 * multicast datagrams. The others are bound to the local address, so
+	 * the system prefers them for unicast datagrams, and spreads the
+	 * sources among them with SO_REUSEPORT
+	 */
+	@Override
+	public synchronized void start() throws IOException {
+		stop();
+		while(shards.size() < shardCount) {
+			shards.add(listener.newShard());
+		}
+		InetAddress local = getUnicastAddress();
+		SocketOption<Boolean> reusePort = shardCount > 1 && local != null ? getReusePortOption() : null;
+		List<Receiver> started = new ArrayList<>();
+		List<DatagramChannel> unicast = new ArrayList<>();
+		try {
+			DatagramChannel channel = openChannel(null, reusePort);
+			serverChannel = channel;
+			if(config.getTransport() == Transport.MULTICAST) {
+				joinMulticastGroup(channel);
+			}
+			started.add(startReceiver(0, channel));
+			if(reusePort != null && channel.supportedOptions().contains(reusePort)) {
+				for(int i = 1; i < shardCount; i++) {
+					channel = openChannel(local, reusePort);
+					unicast.add(channel);
+					started.add(startReceiver(i, channel));
+				}
+			}else if(shardCount > 1) {
+				System.err.println("SO_REUSEPORT or a local address is not available, receiving with a single socket");
+			}
+			servers = started.toArray(new Receiver[started.size()]);
+			if(!unicast.isEmpty()) {
+				unicastChannels = unicast.toArray(new DatagramChannel[unicast.size()]);
+				unicastAddress = local;
+			}
+		}catch(IOException e) {
+			for(Receiver receiver : started) {
+				receiver.stopReceiver();
+			}
+			servers = null;
+			serverChannel = null;
+			throw e;
+		}
+	}
+
+	/**
+	 * @param address The address to bind to, null for every one
+	 */
+	private static DatagramChannel openChannel(InetAddress address, SocketOption<Boolean> reusePort) throws IOException {
+		DatagramChannel channel = DatagramChannel.open(StandardProtocolFamily.INET);
+		channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+		channel.setOption(StandardSocketOptions.SO_BROADCAST, true);
+		if(reusePort != null && channel.supportedOptions().contains(reusePort)) {
+			channel.setOption(reusePort, true);
+		}
+		channel.bind(new InetSocketAddress(address, NetManager.DEFAULT_PORT));
+		return channel;
+	}
+
+	private Receiver startReceiver(int shard, DatagramChannel channel) throws IOException {
+		Receiver receiver = new Receiver(shards.get(shard), shardCount > 1 ? "Solarys receiver " + shard : "Solarys receiver",
+				config.getReceiveBatch());
+		receiver.addChannel(channel);
+		receiver.start();
+		return receiver;
+	}
+
+	/**
+	 * @return The local IPv4 address the extra shards can bind to, or null if there is none
+	 */
+	private InetAddress getUnicastAddress() {
+		InetAddress local = network.getLocalAddress();
+		if(!(local instanceof Inet4Address) || local.isAnyLocalAddress() || local.isLoopbackAddress()) {
+			return null;
+		}
+		return local;
+	}
+
+	/**
+	 * Move the sockets of the extra shards to the new local address.
+	 * Until then they get nothing, and the first socket gets it all
+	 */
+	private void rebindShards() {
+		InetAddress local = getUnicastAddress();
+		if(local == null || local.equals(unicastAddress)) {
+			return;
+		}
+		SocketOption<Boolean> reusePort = getReusePortOption();
+		for(int i = 0; i < unicastChannels.length; i++) {
+			try {
+				DatagramChannel channel = openChannel(local, reusePort);
+				servers[i + 1].addChannel(channel);
+				servers[i + 1].removeChannel(unicastChannels[i]);
+				unicastChannels[i] = channel;
+			}catch(IOException e) {
+				e.printStackTrace();
+			}
+		}
+		unicastAddress = local;
+	}
+
+	/**
+	 * SO_REUSEPORT is standard since Java 9, and was an extended option
+	 * in some Java 8 builds
+	 * @return The option, or null if this Java doesn't have it
+	 */
+	@SuppressWarnings("unchecked")
+	private static SocketOption<Boolean> getReusePortOption() {
+		for(String className : new String[] {"java.net.StandardSocketOptions", "jdk.net.ExtendedSocketOptions"}) {
+			try {
+				return (SocketOption<Boolean>) Class.forName(className).getField("SO_REUSEPORT").get(null);
+			} catch (ReflectiveOperationException | ClassCastException e) {
+				//try the next one
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public synchronized void stop() {
+		if(servers != null) {
+			for(Receiver receiver : servers) {
+				receiver.stopReceiver();
+			}
+			servers = null;
+		}
+		serverChannel = null;
+		unicastChannels = null;
+		unicastAddress = null;
+		multicastGroup = null;
+		for(MulticastLink link : multicastLinks) {
+			link.close();
+		}
+		multicastLinks.clear();
+	}
+
+	@Override
+	public boolean isStarted() {
+		return servers != null;
+	}
+	
+	@Override
+	public synchronized void close() {
+		stop();
+		if(watcher != null) {
+			watcher.stop();
+		}
+		for(BroadcastDomain domain : domains) {
+			domain.close();
+		}
+		if(socket != null) {
+			socket.close();
+		}
+	}
+	
+	/**
+	 * Join the multicast group on every selected interface. If it can't be
+	 * joined anywhere, public packets keep being broadcast
+	 * @param channel The channel listening at DEFAULT_PORT
+	 */
+	private void joinMulticastGroup(DatagramChannel channel) {
+		InetAddress group;
+		try {
+			group = InetAddress.getByName(config.getMulticastGroup());
+		} catch (UnknownHostException e) {
+			System.err.println("Bad multicast group: " + config.getMulticastGroup());
+			return;
+		}
+		if(!group.isMulticastAddress()) {
+			System.err.println("Not a multicast address: " + config.getMulticastGroup());
+			return;
+		}
+		
+		multicastGroup = group;
+		for(NetworkInterface iface : network.getMulticastInterfaces(config.getMulticastInterfaces())) {
+			joinMulticastGroup(iface);
+		}
+		if(multicastLinks.isEmpty()) {
+			System.err.println("Multicast group not joined on any interface, falling back to broadcast");
+		}
+	}
+
+	private void joinMulticastGroup(NetworkInterface iface) {
+		try {
+			multicastLinks.add(new MulticastLink(serverChannel, iface, multicastGroup, config.getMulticastTtl()));
+		} catch (IOException e) {
+			System.err.println(String.format("Can't join %s on %s", multicastGroup.getHostAddress(), iface.getName()));
+		}
+	}
+
+	/**
+	 * Leave the group on interfaces which are gone and join it on new ones
+	 */
+	private void updateMulticastLinks() {
+		List<NetworkInterface> ifaces = network.getMulticastInterfaces(config.getMulticastInterfaces());
+		for(MulticastLink link : multicastLinks) {
+			boolean present = false;
+			for(NetworkInterface iface : ifaces) {
+				present |= iface.getName().equals(link.getNetworkInterface().getName());
+			}
+			if(!present) {
+				link.close();
+				multicastLinks.remove(link);
+			}
+		}
+		for(NetworkInterface iface : ifaces) {
+			boolean linked = false;
+			for(MulticastLink link : multicastLinks) {
+				linked |= iface.getName().equals(link.getNetworkInterface().getName());
+			}
+			if(!linked) {
+				joinMulticastGroup(iface);
+			}
+		}
+	}
+
+	/**
+	 * @return The interfaces where the multicast group was joined. Empty if
+	 * the transport is not multicast or if the group couldn't be joined
+	 */
+	public List<MulticastLink> getMulticastLinks() {
+		return multicastLinks;
+	}
+
+	/**
+	 * Send a packet to the whole network: to the multicast group if it was joined,
+	 * else to the selected broadcast address, or to every broadcast domain at
+	 * once in SendMode.FAN_OUT
+	 */
+	@Override
+	public boolean sendPublic(ByteBuffer buffer) {
+		if(!multicastLinks.isEmpty()) {
+			boolean sent = false;
+			for(MulticastLink link : multicastLinks) {
+				sent |= link.send(buffer.duplicate(), NetManager.DEFAULT_PORT);
+			}
+			return sent;
+		}
+		
+		if(config.getSendMode() == SendMode.FAN_OUT) {
+			boolean sent = false;
+			for(BroadcastDomain domain : getBroadcastDomains()) {
+				sent |= domain.send(buffer.duplicate(), NetManager.DEFAULT_PORT);
+			}
+			return sent;
+		}
+		
+		InetAddress address = getBroadcastAddress();
+		if(address == null) {
+			System.err.println("Error, can't obtain a broadcast address");
+			return false;
+		}
+		return send(buffer, address);
+	}
+
+	@Override
+	public boolean send(ByteBuffer buffer, InetAddress address) {
+		DatagramPacket datagram = new DatagramPacket(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining(), address, NetManager.DEFAULT_PORT);
+		try {
+			socket.send(datagram);
+			return true;
+		} catch (IOException e) {
+			// TODO let caller know this
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	/**
+	 * @return The receiving threads, one per socket, with their counters.
+	 * Empty while the server is stopped
+	 */
+	public List<Receiver> getReceivers() {
+		Receiver[] servers = this.servers;
+		return servers != null ? Arrays.asList(servers) : Collections.<Receiver>emptyList();
+	}
+
+	/**
+	 * @return The network interfaces watcher, or null if they're not watched
+	 */
+	public NetworkWatcher getNetworkWatcher() {
+		return watcher;
+	}
+}
@@ -0,0 +1,174 @@
+/*	Solarys Chat - Local network UDP broadcaster chat
+ * 	Copyright 2018 Yeshe Santos García <civyshk@gmail.com>
+ *	
+ *	This file is part of Solarys Chat
+ *	
+ *	Solarys Chat is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.project104.chat.solaris;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.project104.chat.solaris.NetConfig.Threads;
+
+/**
+ * Where work which may block or take a while runs, e.g. answering a
+ * history request or scanning the interfaces, so that it never holds
+ * the receiving, sending or timer threads. Depending on the Threads
+ * mode it runs on a fixed pool of platform threads, on a virtual thread
+ * per task, or right away on the calling thread.
+ *
+ * Counters tell how the modes compare under load: how many tasks ran,
+ * how long they waited to start and how many ran at once.
+ */
+public class Workers implements Executor {
+	private final Threads mode;
+	private final ExecutorService service;
+
+	private final AtomicLong submitted;
+	private final AtomicLong completed;
+	private final AtomicLong failed;
+	private final AtomicLong waitNanos;
+	private final AtomicInteger active;
+	private final AtomicInteger peakActive;
+
+	private Workers(Threads mode, ExecutorService service) {
+		this.mode = mode;
+		this.service = service;
+		this.submitted = new AtomicLong();
+		this.completed = new AtomicLong();
+		this.failed = new AtomicLong();
+		this.waitNanos = new AtomicLong();
+		this.active = new AtomicInteger();
+		this.peakActive = new AtomicInteger();
+	}
+
+	/**
+	 * @param mode VIRTUAL needs Java 21, with older ones PLATFORM is used instead
+	 */
+	public static Workers create(Threads mode) {
+		if(mode == Threads.INLINE) {
+			return new Workers(Threads.INLINE, null);
+		}
+		if(mode == Threads.VIRTUAL) {
+			ExecutorService virtual = newVirtualThreadPerTaskExecutor();
+			if(virtual != null) {
+				return new Workers(Threads.VIRTUAL, virtual);
+			}
+			System.err.println("Virtual threads are not available, using platform threads");
+		}
+		return new Workers(Threads.PLATFORM, Executors.newFixedThreadPool(
+				Runtime.getRuntime().availableProcessors(), new DaemonThreadFactory()));
+	}
+
+	/**
+	 * Executors.newVirtualThreadPerTaskExecutor() is looked up at runtime,
+	 * this code is built for Java 8
+	 * @return The executor, or null before Java 21
+	 */
+	private static ExecutorService newVirtualThreadPerTaskExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
+
+	private static class DaemonThreadFactory implements ThreadFactory {
+		private final AtomicInteger created = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable task) {
+			Thread thread = new Thread(task, "Solarys worker " + created.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+	@Override
+	public void execute(Runnable task) {
+		submitted.incrementAndGet();
+		if(service == null) {
+			run(task, System.nanoTime());
+			return;
+		}
+		long queued = System.nanoTime();
+		service.execute(() -> run(task, queued));
+	}
+
+	private void run(Runnable task, long queued) {
+		waitNanos.addAndGet(System.nanoTime() - queued);
+		int running = active.incrementAndGet();
+		int peak;
+		while(running > (peak = peakActive.get()) && !peakActive.compareAndSet(peak, running));
+		try {
+			task.run();
+		}catch(RuntimeException e) {
+			failed.incrementAndGet();
+			e.printStackTrace();
+		}finally {
+			active.decrementAndGet();
+			completed.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Let the running tasks end, and accept no more
+	 */
+	public void shutdown() {
+		if(service != null) {
+			service.shutdown();
+		}
+	}
+
+	/**
+	 * @return The mode actually used, PLATFORM if VIRTUAL wasn't available
+	 */
+	public Threads getMode() {
+		return mode;
+	}
+
+	public long getSubmitted() {
+		return submitted.get();
+	}
+
+	public long getCompleted() {
+		return completed.get();
+	}
+
+	public long getFailed() {
+		return failed.get();
+	}
+
+	/**
+	 * @return Average time tasks waited to start, in microseconds
+	 */
+	public long getAverageWait() {
+		long completed = this.completed.get();
+		return completed > 0 ? waitNanos.get() / completed / 1000 : 0;
+	}
+
+	/**
+	 * @return Most tasks which ran at the same time
+	 */
+	public int getPeakActive() {
+		return peakActive.get();
+	}
+}
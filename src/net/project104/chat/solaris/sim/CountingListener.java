@@ -0,0 +1,85 @@
+/*	Solarys Chat - Local network UDP broadcaster chat
+ * 	Copyright 2018 Yeshe Santos García <civyshk@gmail.com>
+ *	
+ *	This file is part of Solarys Chat
+ *	
+ *	Solarys Chat is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.project104.chat.solaris.sim;
+
+import java.net.InetAddress;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.project104.chat.solaris.Message;
+import net.project104.chat.solaris.ModelListener;
+import net.project104.chat.solaris.Node;
+import net.project104.chat.solaris.Room;
+
+/**
+ * Stands for the GUI of a simulated node, and only counts what it's told
+ */
+class CountingListener implements ModelListener {
+	/** Nodes in the public room now, besides this one */
+	final AtomicLong users = new AtomicLong();
+	final AtomicLong left = new AtomicLong();
+	final AtomicLong messages = new AtomicLong();
+	final AtomicLong histories = new AtomicLong();
+
+	@Override
+	public void showBroadcasts(List<InetAddress> broadcasts) {
+	}
+
+	@Override
+	public void roomAvailable(Room room) {
+	}
+
+	@Override
+	public void userEnteredRoom(Node node, Room room) {
+		if(room.isPublic()) {
+			users.incrementAndGet();
+		}
+	}
+
+	@Override
+	public void userChangedName(Node node, String oldName) {
+	}
+
+	@Override
+	public void roomChangedName(Room room) {
+	}
+
+	@Override
+	public void userLeft(Node node) {
+		users.decrementAndGet();
+		left.incrementAndGet();
+	}
+
+	@Override
+	public void roomReceivedMessage(Message message, Room room) {
+		if(room.isPublic()) {
+			messages.incrementAndGet();
+		}
+	}
+
+	@Override
+	public void roomReceivedHistory(Room room) {
+		histories.incrementAndGet();
+	}
+
+	@Override
+	public void roomMessageTooLarge(Room room) {
+	}
+}
@@ -0,0 +1,194 @@
+/*	Solarys Chat - Local network UDP broadcaster chat
+ * 	Copyright 2018 Yeshe Santos García <civyshk@gmail.com>
+ *	
+ *	This file is part of Solarys Chat
+ *	
+ *	Solarys Chat is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.project104.chat.solaris.sim;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A LAN inside the JVM, shared by the InMemoryTransport of every
+ * simulated node. Each datagram reaching a node may be lost, and
+ * arrives after a random delay; copies of a public datagram are lost
+ * and delayed independently, like on a real broadcast domain.
+ *
+ * Delayed datagrams wait on a single scheduler thread, then a small
+ * pool hands them to the nodes, never more than one thread per node
+ */
+public class InMemoryNetwork {
+	public static final int MTU = 1500;
+
+	private final double loss;
+	private final long minDelay;
+	private final long maxDelay;
+	private final Random random;
+	private final Map<InetAddress, InMemoryTransport> nodes;
+	private final AtomicInteger nextAddress;
+	private final ScheduledExecutorService delays;
+	private final ExecutorService deliveries;
+
+	private final AtomicLong sent;
+	private final AtomicLong delivered;
+	private final AtomicLong lost;
+	private final AtomicLong inFlight;
+
+	/**
+	 * @param loss Probability of each copy of a datagram to be lost, 0 to 1
+	 * @param minDelay Shortest delay of a datagram, in milliseconds
+	 * @param maxDelay Longest delay of a datagram, in milliseconds
+	 * @param seed For the random losses and delays
+	 */
+	public InMemoryNetwork(double loss, long minDelay, long maxDelay, long seed) {
+		this.loss = loss;
+		this.minDelay = minDelay;
+		this.maxDelay = Math.max(minDelay, maxDelay);
+		this.random = new Random(seed);
+		this.nodes = new ConcurrentHashMap<>();
+		this.nextAddress = new AtomicInteger(1);
+		this.delays = Executors.newSingleThreadScheduledExecutor(task -> {
+			Thread thread = new Thread(task, "Simulated delays");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.deliveries = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), task -> {
+			Thread thread = new Thread(task, "Simulated deliveries");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.sent = new AtomicLong();
+		this.delivered = new AtomicLong();
+		this.lost = new AtomicLong();
+		this.inFlight = new AtomicLong();
+	}
+
+	/**
+	 * @return A transport with a new address in 10.0.0.0/8
+	 */
+	public InMemoryTransport newTransport() {
+		int n = nextAddress.getAndIncrement();
+		InetAddress address;
+		try {
+			address = InetAddress.getByAddress(new byte[] {10, (byte) (n >> 16), (byte) (n >> 8), (byte) n});
+		} catch (UnknownHostException e) {
+			throw new IllegalStateException(e);
+		}
+		InMemoryTransport transport = new InMemoryTransport(this, address, deliveries);
+		nodes.put(address, transport);
+		return transport;
+	}
+
+	void remove(InMemoryTransport transport) {
+		nodes.remove(transport.getLocalAddress());
+	}
+
+	/**
+	 * @param destination null to send to every node but the sender
+	 */
+	boolean send(InMemoryTransport from, ByteBuffer datagram, InetAddress destination) {
+		sent.incrementAndGet();
+		byte[] data = new byte[datagram.remaining()];
+		datagram.get(data);
+		if(destination != null) {
+			InMemoryTransport to = nodes.get(destination);
+			if(to != null) {
+				deliver(from, to, data);
+			}
+			return true;
+		}
+		for(InMemoryTransport to : nodes.values()) {
+			if(to != from) {
+				deliver(from, to, data);
+			}
+		}
+		return true;
+	}
+
+	private void deliver(InMemoryTransport from, InMemoryTransport to, byte[] data) {
+		if(loss > 0 && random.nextDouble() < loss) {
+			lost.incrementAndGet();
+			return;
+		}
+		long delay = minDelay + (maxDelay > minDelay ? (long) (random.nextDouble() * (maxDelay - minDelay)) : 0);
+		inFlight.incrementAndGet();
+		if(delay == 0) {
+			arrive(from, to, data);
+		}else {
+			delays.schedule(() -> arrive(from, to, data), delay, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private void arrive(InMemoryTransport from, InMemoryTransport to, byte[] data) {
+		inFlight.decrementAndGet();
+		if(to.enqueue(from.getSender(), data)) {
+			delivered.incrementAndGet();
+		}else {
+			lost.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Stop the threads of the network, nothing is delivered anymore
+	 */
+	public void shutdown() {
+		delays.shutdownNow();
+		deliveries.shutdownNow();
+	}
+
+	public int getNodes() {
+		return nodes.size();
+	}
+
+	/**
+	 * @return Datagrams sent, a public one counts once
+	 */
+	public long getSent() {
+		return sent.get();
+	}
+
+	/**
+	 * @return Copies of datagrams which reached a listening node
+	 */
+	public long getDelivered() {
+		return delivered.get();
+	}
+
+	/**
+	 * @return Copies of datagrams lost on the way, or which reached a node not listening
+	 */
+	public long getLost() {
+		return lost.get();
+	}
+
+	/**
+	 * @return Copies of datagrams still being delayed
+	 */
+	public long getInFlight() {
+		return inFlight.get();
+	}
+}
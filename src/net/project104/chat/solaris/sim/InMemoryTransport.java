@@ -0,0 +1,184 @@
+/*	Solarys Chat - Local network UDP broadcaster chat
+ * 	Copyright 2018 Yeshe Santos García <civyshk@gmail.com>
+ *	
+ *	This file is part of Solarys Chat
+ *	
+ *	Solarys Chat is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.project104.chat.solaris.sim;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.project104.chat.solaris.DatagramTransport;
+import net.project104.chat.solaris.NetManager;
+import net.project104.chat.solaris.Receiver;
+import net.project104.chat.solaris.Scheduler;
+
+/**
+ * The DatagramTransport of a simulated node, on an InMemoryNetwork.
+ * Datagrams which arrive are queued, and drained in batches by one
+ * thread at a time, like a Receiver does with a socket
+ */
+public class InMemoryTransport implements DatagramTransport {
+	/** Most datagrams queued for a node, more are dropped like by a full socket buffer */
+	public static final int QUEUE_CAPACITY = 4096;
+
+	private static final class Datagram {
+		final InetSocketAddress from;
+		final byte[] data;
+
+		Datagram(InetSocketAddress from, byte[] data) {
+			this.from = from;
+			this.data = data;
+		}
+	}
+
+	private final InMemoryNetwork network;
+	private final InetAddress address;
+	private final InetSocketAddress sender;
+	private final Executor deliveries;
+	private final Queue<Datagram> inbox;
+	private final AtomicInteger queued;
+	private final AtomicBoolean draining;
+	private final Receiver.Batch batch;
+	private Listener listener;
+	private Receiver.Listener shard;
+	private volatile boolean started;
+
+	InMemoryTransport(InMemoryNetwork network, InetAddress address, Executor deliveries) {
+		this.network = network;
+		this.address = address;
+		this.sender = new InetSocketAddress(address, NetManager.DEFAULT_PORT);
+		this.deliveries = deliveries;
+		this.inbox = new ConcurrentLinkedQueue<>();
+		this.queued = new AtomicInteger();
+		this.draining = new AtomicBoolean();
+		this.batch = new Receiver.Batch(Receiver.DEFAULT_BATCH);
+	}
+
+	InetSocketAddress getSender() {
+		return sender;
+	}
+
+	@Override
+	public void open(Listener listener, Scheduler timers, Executor executor) {
+		this.listener = listener;
+	}
+
+	@Override
+	public synchronized void start() {
+		if(shard == null) {
+			shard = listener.newShard();
+		}
+		started = true;
+	}
+
+	@Override
+	public void stop() {
+		started = false;
+	}
+
+	@Override
+	public boolean isStarted() {
+		return started;
+	}
+
+	@Override
+	public void close() {
+		stop();
+		network.remove(this);
+	}
+
+	@Override
+	public InetAddress getLocalAddress() {
+		return address;
+	}
+
+	@Override
+	public int getMtu() {
+		return InMemoryNetwork.MTU;
+	}
+
+	@Override
+	public boolean sendPublic(ByteBuffer datagram) {
+		return network.send(this, datagram, null);
+	}
+
+	@Override
+	public boolean send(ByteBuffer datagram, InetAddress destination) {
+		return network.send(this, datagram, destination);
+	}
+
+	@Override
+	public List<InetAddress> getBroadcasts() {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public void setBroadcast(InetAddress broadcast) {
+	}
+
+	/**
+	 * @return false if the node isn't listening or its queue is full
+	 */
+	boolean enqueue(InetSocketAddress from, byte[] data) {
+		if(!started || queued.incrementAndGet() > QUEUE_CAPACITY) {
+			if(started) {
+				queued.decrementAndGet();
+			}
+			return false;
+		}
+		inbox.add(new Datagram(from, data));
+		if(draining.compareAndSet(false, true)) {
+			deliveries.execute(this::drain);
+		}
+		return true;
+	}
+
+	private void drain() {
+		while(true) {
+			batch.clear();
+			Datagram datagram;
+			while(batch.hasRoom() && (datagram = inbox.peek()) != null) {
+				if(!batch.add(ByteBuffer.wrap(datagram.data), datagram.from)) {
+					break;
+				}
+				inbox.poll();
+				queued.decrementAndGet();
+			}
+			if(batch.size() > 0) {
+				try {
+					shard.received(batch);
+				}catch(RuntimeException e) {
+					e.printStackTrace();
+				}
+				continue;
+			}
+			draining.set(false);
+			if(inbox.isEmpty() || !draining.compareAndSet(false, true)) {
+				return;
+			}
+		}
+	}
+}
@@ -0,0 +1,167 @@
+/*	Solarys Chat - Local network UDP broadcaster chat
+ * 	Copyright 2018 Yeshe Santos García <civyshk@gmail.com>
+ *	
+ *	This file is part of Solarys Chat
+ *	
+ *	Solarys Chat is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.project104.chat.solaris.sim;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.LongSupplier;
+
+import net.project104.chat.solaris.EventLoop;
+import net.project104.chat.solaris.Model;
+import net.project104.chat.solaris.NetConfig;
+
+/**
+ * Load test without any GUI. Many Model and NetManager pairs run in
+ * this JVM over an InMemoryNetwork: they all join at once, then flood
+ * the public room with messages, and the time each phase takes to
+ * reach every node is printed.
+ *
+ * Every Model is touched only by one single "model thread", as the
+ * event dispatch thread would do with a single GUI.
+ *
+ * Usage: Simulation [nodes] [messages] [loss] [max delay ms] [seed]
+ */
+public class Simulation {
+	/** A phase ends when it's complete, or when nothing changed for this long */
+	public static final long PHASE_STALL = 2_000;
+
+	private final int nodes;
+	private final int messages;
+	private final InMemoryNetwork network;
+	private final ExecutorService modelThread;
+	private final EventLoop.Dispatcher dispatcher;
+	private final NetConfig config;
+	private final List<Model> models;
+	private final List<CountingListener> counters;
+	private final Random random;
+
+	public Simulation(int nodes, int messages, double loss, long maxDelay, long seed) {
+		this.nodes = nodes;
+		this.messages = messages;
+		this.network = new InMemoryNetwork(loss, Math.min(1, maxDelay), maxDelay, seed);
+		this.modelThread = Executors.newSingleThreadExecutor(task -> {
+			Thread thread = new Thread(task, "Simulated models");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.dispatcher = batch -> modelThread.submit(batch).get();
+		this.config = NetConfig.fromSystemProperties();
+		//hundreds of nodes would start hundreds of pools otherwise
+		config.setThreads(NetConfig.Threads.INLINE);
+		this.models = new ArrayList<>();
+		this.counters = new ArrayList<>();
+		this.random = new Random(seed);
+	}
+
+	private void onModelThread(Runnable task) throws InterruptedException, ExecutionException {
+		modelThread.submit(task).get();
+	}
+
+	public void run() throws InterruptedException, ExecutionException {
+		for(int i = 0; i < nodes; i++) {
+			Model model = new Model();
+			CountingListener counter = new CountingListener();
+			model.setListener(counter);
+			models.add(model);
+			counters.add(counter);
+		}
+		onModelThread(() -> {
+			for(int i = 0; i < nodes; i++) {
+				models.get(i).init("node" + i, config, dispatcher, network.newTransport());
+			}
+		});
+		System.out.println(nodes + " nodes, " + Thread.activeCount() + " threads");
+
+		long start = System.nanoTime();
+		onModelThread(() -> models.forEach(Model::connect));
+		//every node sees everyone but itself
+		boolean joined = await(() -> sum(c -> c.users.get()), (long) nodes * (nodes - 1));
+		report("Join", start, joined, sum(c -> c.users.get()), (long) nodes * (nodes - 1));
+
+		start = System.nanoTime();
+		onModelThread(() -> {
+			for(int i = 0; i < messages; i++) {
+				Model model = models.get(random.nextInt(nodes));
+				model.sendMessage("Message " + i, model.getPublicRoom());
+			}
+		});
+		//the sender shows its own messages too
+		boolean flooded = await(() -> sum(c -> c.messages.get()), (long) nodes * messages);
+		report("Flood", start, flooded, sum(c -> c.messages.get()), (long) nodes * messages);
+
+		System.out.println("Network: " + network.getSent() + " sent, " + network.getDelivered() + " delivered, "
+				+ network.getLost() + " lost");
+		System.out.println("Histories merged: " + sum(c -> c.histories.get()));
+
+		onModelThread(() -> models.forEach(Model::close));
+		network.shutdown();
+		modelThread.shutdown();
+	}
+
+	private interface Metric {
+		long of(CountingListener counter);
+	}
+
+	private long sum(Metric metric) {
+		long total = 0;
+		for(CountingListener counter : counters) {
+			total += metric.of(counter);
+		}
+		return total;
+	}
+
+	/**
+	 * @return false if the progress stalled before reaching the expected value
+	 */
+	private static boolean await(LongSupplier progress, long expected) throws InterruptedException {
+		long last = -1;
+		long changed = System.currentTimeMillis();
+		long now;
+		while((now = progress.getAsLong()) < expected) {
+			if(now != last) {
+				last = now;
+				changed = System.currentTimeMillis();
+			}else if(System.currentTimeMillis() - changed > PHASE_STALL) {
+				return false;
+			}
+			Thread.sleep(10);
+		}
+		return true;
+	}
+
+	private static void report(String phase, long start, boolean done, long reached, long expected) {
+		long millis = (System.nanoTime() - start) / 1_000_000;
+		System.out.println(phase + (done ? " done" : " stalled") + " after " + millis + " ms: "
+				+ reached + "/" + expected);
+	}
+
+	public static void main(String[] args) throws Exception {
+		int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+		int messages = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+		double loss = args.length > 2 ? Double.parseDouble(args[2]) : 0.01;
+		long maxDelay = args.length > 3 ? Long.parseLong(args[3]) : 20;
+		long seed = args.length > 4 ? Long.parseLong(args[4]) : 1;
+		new Simulation(nodes, messages, loss, maxDelay, seed).run();
+	}
+}
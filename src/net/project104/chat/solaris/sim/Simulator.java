@@ -0,0 +1,189 @@
+/*	Solarys Chat - Local network UDP broadcaster chat
+ * 	Copyright 2018 Yeshe Santos García <civyshk@gmail.com>
+ *	
+ *	This file is part of Solarys Chat
+ *	
+ *	Solarys Chat is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.project104.chat.solaris.sim;
+
+import java.util.PriorityQueue;
+
+import net.project104.chat.solaris.Clock;
+import net.project104.chat.solaris.Scheduler;
+
+/**
+ * Discrete-event simulator. It is the Clock and the Scheduler of every
+ * simulated node: time only moves when run() takes the next event,
+ * so hours of traffic take as long as their events take to process.
+ *
+ * Events at the same time run in the order they were scheduled, and
+ * everything runs on the thread calling run(), so two runs with the
+ * same seeds do exactly the same.
+ *
+ * A Timeout rescheduled to a later time keeps its place in the queue,
+ * and is only queued again once that place comes up. Liveness timers,
+ * pushed back by every packet heard, don't fill the queue that way.
+ */
+public class Simulator implements Clock, Scheduler {
+	/** Virtual time when a simulation starts, so that timestamps look like real ones */
+	public static final long EPOCH = 1520000000000L;
+
+	private static final class Event implements Comparable<Event> {
+		final long time;
+		final long order;
+		final VirtualTimeout timeout;
+
+		Event(long time, long order, VirtualTimeout timeout) {
+			this.time = time;
+			this.order = order;
+			this.timeout = timeout;
+		}
+
+		@Override
+		public int compareTo(Event other) {
+			if(time != other.time) {
+				return Long.compare(time, other.time);
+			}
+			return Long.compare(order, other.order);
+		}
+	}
+
+	private final class VirtualTimeout implements Scheduler.Timeout {
+		private final Runnable task;
+		private long deadline = -1;
+		/** The event queued for this timeout, if any, maybe earlier than the deadline */
+		private Event queued;
+
+		VirtualTimeout(Runnable task) {
+			this.task = task;
+		}
+
+		@Override
+		public boolean isScheduled() {
+			return deadline >= 0;
+		}
+
+		@Override
+		public void schedule(long delayMillis) {
+			deadline = now + Math.max(0, delayMillis);
+			if(queued == null || queued.time > deadline) {
+				queue(this, deadline);
+			}
+		}
+
+		@Override
+		public void cancel() {
+			deadline = -1;
+		}
+	}
+
+	private final PriorityQueue<Event> events;
+	private long now;
+	private long nextOrder;
+	private long processed;
+
+	public Simulator() {
+		this.events = new PriorityQueue<>();
+		this.now = EPOCH;
+	}
+
+	private void queue(VirtualTimeout timeout, long time) {
+		Event event = new Event(time, nextOrder++, timeout);
+		timeout.queued = event;
+		events.add(event);
+	}
+
+	@Override
+	public long millis() {
+		return now;
+	}
+
+	@Override
+	public long nanos() {
+		return (now - EPOCH) * 1000000;
+	}
+
+	@Override
+	public Scheduler.Timeout newTimeout(Runnable task) {
+		return new VirtualTimeout(task);
+	}
+
+	@Override
+	public Scheduler.Timeout schedule(Runnable task, long delayMillis) {
+		Scheduler.Timeout timeout = new VirtualTimeout(task);
+		timeout.schedule(delayMillis);
+		return timeout;
+	}
+
+	/**
+	 * Run a task at some absolute virtual time, or now if it's past
+	 */
+	public void at(long time, Runnable task) {
+		schedule(task, time - now);
+	}
+
+	/**
+	 * Run events in order until the next one is after the given time,
+	 * which becomes the current time
+	 */
+	public void runUntil(long time) {
+		Event event;
+		while((event = events.peek()) != null && event.time <= time) {
+			events.poll();
+			VirtualTimeout timeout = event.timeout;
+			if(timeout.queued != event) {
+				//replaced by an earlier event
+				continue;
+			}
+			timeout.queued = null;
+			if(timeout.deadline < 0) {
+				continue;
+			}
+			now = event.time;
+			if(timeout.deadline > now) {
+				//pushed back since it was queued
+				queue(timeout, timeout.deadline);
+				continue;
+			}
+			timeout.deadline = -1;
+			processed++;
+			try {
+				timeout.task.run();
+			}catch(RuntimeException e) {
+				e.printStackTrace();
+			}
+		}
+		now = Math.max(now, time);
+	}
+
+	public void runFor(long millis) {
+		runUntil(now + millis);
+	}
+
+	/**
+	 * @return Tasks run so far
+	 */
+	public long getProcessed() {
+		return processed;
+	}
+
+	/**
+	 * @return Events in the queue, including stale ones
+	 */
+	public int getPending() {
+		return events.size();
+	}
+}
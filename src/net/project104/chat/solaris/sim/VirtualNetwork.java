@@ -0,0 +1,221 @@
+/*	Solarys Chat - Local network UDP broadcaster chat
+ * 	Copyright 2018 Yeshe Santos García <civyshk@gmail.com>
+ *	
+ *	This file is part of Solarys Chat
+ *	
+ *	Solarys Chat is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.project104.chat.solaris.sim;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import net.project104.chat.solaris.Receiver;
+
+/**
+ * A LAN in the virtual time of a Simulator. Every copy of a datagram is
+ * lost or delayed according to the Loss and Latency models, drawing from
+ * a single seeded Random, and copies arriving at the same time are
+ * delivered by a single event.
+ *
+ * Nothing here is thread safe, everything runs on the simulator's thread.
+ */
+public class VirtualNetwork {
+	public static final int MTU = 1500;
+
+	public interface Latency {
+		/**
+		 * @return Milliseconds one copy of a datagram takes to arrive
+		 */
+		public long delay(Random random);
+
+		public static Latency fixed(long millis) {
+			return random -> millis;
+		}
+
+		public static Latency uniform(long min, long max) {
+			return random -> min + (max > min ? (long) (random.nextDouble() * (max - min + 1)) : 0);
+		}
+
+		/**
+		 * Mostly close to min, with a long tail, like a busy network
+		 */
+		public static Latency exponential(long min, long mean) {
+			return random -> min + (long) (-Math.log(1 - random.nextDouble()) * Math.max(0, mean - min));
+		}
+	}
+
+	public interface Loss {
+		/**
+		 * @return true if one copy of a datagram is lost
+		 */
+		public boolean lost(Random random);
+
+		public static Loss none() {
+			return random -> false;
+		}
+
+		/**
+		 * Each copy lost independently
+		 */
+		public static Loss random(double probability) {
+			return random -> probability > 0 && random.nextDouble() < probability;
+		}
+
+		/**
+		 * Gilbert model: the network is either good, losing nothing, or
+		 * bad, losing everything, for bursts of meanBurst copies on average
+		 * @param probability Fraction of copies lost in the long run
+		 */
+		public static Loss bursty(double probability, double meanBurst) {
+			double toGood = 1 / Math.max(1, meanBurst);
+			double toBad = probability >= 1 ? 1 : toGood * probability / (1 - probability);
+			boolean[] bad = new boolean[1];
+			return random -> {
+				bad[0] = random.nextDouble() < (bad[0] ? 1 - toGood : toBad);
+				return bad[0];
+			};
+		}
+	}
+
+	private final Simulator simulator;
+	private final Latency latency;
+	private final Loss loss;
+	private final Random random;
+	private final List<VirtualTransport> nodes;
+	private final Map<InetAddress, VirtualTransport> byAddress;
+	/** Handed to one node at a time, the NetManager consumes it before returning */
+	private final Receiver.Batch batch;
+
+	private long sent;
+	private long delivered;
+	private long lost;
+	private long bytes;
+
+	public VirtualNetwork(Simulator simulator, Latency latency, Loss loss, long seed) {
+		this.simulator = simulator;
+		this.latency = latency;
+		this.loss = loss;
+		this.random = new Random(seed);
+		this.nodes = new ArrayList<>();
+		this.byAddress = new HashMap<>();
+		this.batch = new Receiver.Batch(1);
+	}
+
+	/**
+	 * @return A transport with a new address in 10.0.0.0/8
+	 */
+	public VirtualTransport newTransport() {
+		int n = nodes.size() + 1;
+		InetAddress address;
+		try {
+			address = InetAddress.getByAddress(new byte[] {10, (byte) (n >> 16), (byte) (n >> 8), (byte) n});
+		} catch (UnknownHostException e) {
+			throw new IllegalStateException(e);
+		}
+		VirtualTransport transport = new VirtualTransport(this, address);
+		nodes.add(transport);
+		byAddress.put(address, transport);
+		return transport;
+	}
+
+	/**
+	 * @param destination null to send to every node but the sender
+	 */
+	boolean send(VirtualTransport from, ByteBuffer datagram, InetAddress destination) {
+		sent++;
+		byte[] data = new byte[datagram.remaining()];
+		datagram.get(data);
+		TreeMap<Long, List<VirtualTransport>> arrivals = new TreeMap<>();
+		if(destination != null) {
+			VirtualTransport to = byAddress.get(destination);
+			if(to != null) {
+				route(to, arrivals);
+			}
+		}else {
+			for(VirtualTransport to : nodes) {
+				if(to != from) {
+					route(to, arrivals);
+				}
+			}
+		}
+		for(Map.Entry<Long, List<VirtualTransport>> arrival : arrivals.entrySet()) {
+			List<VirtualTransport> targets = arrival.getValue();
+			simulator.schedule(() -> deliver(from, targets, data), arrival.getKey());
+		}
+		return true;
+	}
+
+	private void route(VirtualTransport to, Map<Long, List<VirtualTransport>> arrivals) {
+		if(loss.lost(random)) {
+			lost++;
+			return;
+		}
+		arrivals.computeIfAbsent(latency.delay(random), delay -> new ArrayList<>()).add(to);
+	}
+
+	private void deliver(VirtualTransport from, List<VirtualTransport> targets, byte[] data) {
+		for(VirtualTransport to : targets) {
+			if(!to.isListening()) {
+				lost++;
+				continue;
+			}
+			batch.clear();
+			batch.add(ByteBuffer.wrap(data), from.getSender());
+			delivered++;
+			bytes += data.length;
+			to.received(batch);
+		}
+	}
+
+	public List<VirtualTransport> getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * @return Datagrams sent, a public one counts once
+	 */
+	public long getSent() {
+		return sent;
+	}
+
+	/**
+	 * @return Copies of datagrams which reached a listening node
+	 */
+	public long getDelivered() {
+		return delivered;
+	}
+
+	/**
+	 * @return Copies of datagrams lost on the way, or which reached a node not listening
+	 */
+	public long getLost() {
+		return lost;
+	}
+
+	/**
+	 * @return Bytes of every copy delivered
+	 */
+	public long getBytes() {
+		return bytes;
+	}
+}
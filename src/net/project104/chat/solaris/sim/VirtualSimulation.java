@@ -0,0 +1,205 @@
+/*	Solarys Chat - Local network UDP broadcaster chat
+ * 	Copyright 2018 Yeshe Santos García <civyshk@gmail.com>
+ *	
+ *	This file is part of Solarys Chat
+ *	
+ *	Solarys Chat is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.project104.chat.solaris.sim;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import net.project104.chat.solaris.EventLoop;
+import net.project104.chat.solaris.Model;
+import net.project104.chat.solaris.NetConfig;
+
+/**
+ * Reproducible load test in virtual time. Every node runs the whole
+ * stack, from Model down to a VirtualTransport, and the Simulator drives
+ * them all from this single thread: they join within a few seconds,
+ * chat for the given time, and some crash halfway without a LEAVE so the
+ * others must notice from missed heartbeats.
+ *
+ * The outcome is summed up in a fingerprint. The same arguments always
+ * give the same fingerprint, so any change of it after a code change is
+ * a change of behaviour.
+ *
+ * Usage: VirtualSimulation [nodes] [minutes] [messages per minute] [crashed fraction] [loss] [seed]
+ */
+public class VirtualSimulation {
+	/** Time over which every node starts and joins */
+	public static final long JOIN_SPREAD = 10000;
+	/** Virtual time between two progress lines */
+	public static final long REPORT_INTERVAL = 600000;
+
+	private final int nodes;
+	private final long duration;
+	private final int messages;
+	private final int crashes;
+	private final Random random;
+	private final Simulator simulator;
+	private final VirtualNetwork network;
+	private final List<Model> models;
+	private final List<CountingListener> counters;
+	private long messagesSent;
+
+	public VirtualSimulation(int nodes, long minutes, int messagesPerMinute, double crashed, double loss, long seed) {
+		this.nodes = nodes;
+		this.duration = minutes * 60000;
+		this.messages = (int) (minutes * messagesPerMinute);
+		this.crashes = (int) (nodes * crashed);
+		this.random = new Random(seed);
+		this.simulator = new Simulator();
+		this.network = new VirtualNetwork(simulator, VirtualNetwork.Latency.exponential(1, 5),
+				VirtualNetwork.Loss.random(loss), random.nextLong());
+		this.models = new ArrayList<>();
+		this.counters = new ArrayList<>();
+	}
+
+	private NetConfig newConfig() {
+		NetConfig config = new NetConfig();
+		config.setClock(simulator);
+		config.setScheduler(simulator);
+		config.setRandom(new Random(random.nextLong()));
+		config.setThreads(NetConfig.Threads.INLINE);
+		return config;
+	}
+
+	public void run() {
+		long wallStart = System.nanoTime();
+		long start = simulator.millis();
+		for(int i = 0; i < nodes; i++) {
+			Model model = new Model();
+			CountingListener counter = new CountingListener();
+			model.setListener(counter);
+			model.init("node" + i, newConfig(), EventLoop.INLINE, network.newTransport());
+			models.add(model);
+			counters.add(counter);
+			simulator.at(start + (long) (random.nextDouble() * JOIN_SPREAD), model::connect);
+		}
+		for(int i = 0; i < messages; i++) {
+			int text = i;
+			simulator.at(start + JOIN_SPREAD + (long) (random.nextDouble() * (duration - JOIN_SPREAD)), () -> sendMessage(text));
+		}
+		List<VirtualTransport> transports = network.getNodes();
+		simulator.at(start + duration / 2, () -> {
+			for(int i = 0; i < crashes; i++) {
+				transports.get(i * nodes / Math.max(1, crashes)).crash();
+			}
+		});
+
+		simulator.runUntil(start + JOIN_SPREAD * 2);
+		long joined = sum(c -> c.users.get());
+		report("Joined", wallStart, start);
+		System.out.println("  " + joined + "/" + (long) nodes * (nodes - 1) + " nodes seen");
+
+		long next = start + REPORT_INTERVAL;
+		while(next < start + duration) {
+			simulator.runUntil(next);
+			report("Running", wallStart, start);
+			next += REPORT_INTERVAL;
+		}
+		simulator.runUntil(start + duration);
+		report("Done", wallStart, start);
+
+		long alive = nodes - crashes;
+		System.out.println("  " + sum(c -> c.messages.get()) + " messages shown, " + messagesSent + " sent");
+		System.out.println("  " + sum(c -> c.left.get()) + " nodes left, " + (long) crashes * (alive) + " expected from crashes");
+		System.out.println("  " + sum(c -> c.histories.get()) + " histories merged");
+		System.out.println("  Network: " + network.getSent() + " sent, " + network.getDelivered() + " delivered, "
+				+ network.getLost() + " lost, " + network.getBytes() / 1024 + " KB");
+		System.out.printf("  Fingerprint: %016x%n", fingerprint());
+		checkEventLoops();
+
+		for(Model model : models) {
+			model.close();
+		}
+	}
+
+	private void sendMessage(int text) {
+		Model model = models.get(random.nextInt(nodes));
+		if(network.getNodes().get(models.indexOf(model)).isCrashed() || !model.isConnected()) {
+			return;
+		}
+		messagesSent++;
+		model.sendMessage("Message " + text, model.getPublicRoom());
+	}
+
+	/**
+	 * Every event published must have been applied by the end, an inline
+	 * loop has nobody else to apply them later
+	 */
+	private void checkEventLoops() {
+		int stuck = 0;
+		long dropped = 0;
+		for(Model model : models) {
+			EventLoop events = model.getNetManager().getEventLoop();
+			if(events.getBacklog() != 0) {
+				stuck++;
+			}
+			dropped += events.getDropped();
+		}
+		System.out.println("  " + stuck + " nodes with events left unapplied, " + dropped + " events dropped");
+		if(stuck != 0) {
+			System.err.println("Event loops stuck on " + stuck + " nodes");
+		}
+	}
+
+	private interface Metric {
+		long of(CountingListener counter);
+	}
+
+	private long sum(Metric metric) {
+		long total = 0;
+		for(CountingListener counter : counters) {
+			total += metric.of(counter);
+		}
+		return total;
+	}
+
+	/**
+	 * @return A hash of what every node saw and of the network counters
+	 */
+	private long fingerprint() {
+		long hash = 1125899906842597L;
+		for(CountingListener counter : counters) {
+			hash = 31 * hash + counter.users.get();
+			hash = 31 * hash + counter.left.get();
+			hash = 31 * hash + counter.messages.get();
+			hash = 31 * hash + counter.histories.get();
+		}
+		hash = 31 * hash + network.getSent();
+		hash = 31 * hash + network.getDelivered();
+		hash = 31 * hash + network.getLost();
+		return 31 * hash + simulator.getProcessed();
+	}
+
+	private void report(String phase, long wallStart, long start) {
+		System.out.println(String.format("%s at %d s virtual, %d ms real: %d events",
+				phase, (simulator.millis() - start) / 1000, (System.nanoTime() - wallStart) / 1000000, simulator.getProcessed()));
+	}
+
+	public static void main(String[] args) {
+		int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		long minutes = args.length > 1 ? Long.parseLong(args[1]) : 60;
+		int messagesPerMinute = args.length > 2 ? Integer.parseInt(args[2]) : 60;
+		double crashed = args.length > 3 ? Double.parseDouble(args[3]) : 0.01;
+		double loss = args.length > 4 ? Double.parseDouble(args[4]) : 0.01;
+		long seed = args.length > 5 ? Long.parseLong(args[5]) : 1;
+		new VirtualSimulation(nodes, minutes, messagesPerMinute, crashed, loss, seed).run();
+	}
+}
@@ -0,0 +1,136 @@
+/*	Solarys Chat - Local network UDP broadcaster chat
+ * 	Copyright 2018 Yeshe Santos García <civyshk@gmail.com>
+ *	
+ *	This file is part of Solarys Chat
+ *	
+ *	Solarys Chat is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.project104.chat.solaris.sim;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import net.project104.chat.solaris.DatagramTransport;
+import net.project104.chat.solaris.NetManager;
+import net.project104.chat.solaris.Receiver;
+import net.project104.chat.solaris.Scheduler;
+
+/**
+ * The DatagramTransport of a node on a VirtualNetwork. Datagrams are
+ * handed to the NetManager as soon as they arrive, on the simulator's
+ * thread, one per batch.
+ *
+ * crash() makes the node go silent without a LEAVE, like one which was
+ * unplugged, so that the others only notice from missed heartbeats
+ */
+public class VirtualTransport implements DatagramTransport {
+	private final VirtualNetwork network;
+	private final InetAddress address;
+	private final InetSocketAddress sender;
+	private Listener listener;
+	private Receiver.Listener shard;
+	private boolean started;
+	private boolean crashed;
+
+	VirtualTransport(VirtualNetwork network, InetAddress address) {
+		this.network = network;
+		this.address = address;
+		this.sender = new InetSocketAddress(address, NetManager.DEFAULT_PORT);
+	}
+
+	InetSocketAddress getSender() {
+		return sender;
+	}
+
+	boolean isListening() {
+		return started && !crashed;
+	}
+
+	void received(Receiver.Batch batch) {
+		shard.received(batch);
+	}
+
+	/**
+	 * Stop sending and receiving anything, for good
+	 */
+	public void crash() {
+		crashed = true;
+	}
+
+	public boolean isCrashed() {
+		return crashed;
+	}
+
+	@Override
+	public void open(Listener listener, Scheduler timers, Executor executor) {
+		this.listener = listener;
+	}
+
+	@Override
+	public void start() {
+		if(shard == null) {
+			shard = listener.newShard();
+		}
+		started = true;
+	}
+
+	@Override
+	public void stop() {
+		started = false;
+	}
+
+	@Override
+	public boolean isStarted() {
+		return started;
+	}
+
+	@Override
+	public void close() {
+		stop();
+	}
+
+	@Override
+	public InetAddress getLocalAddress() {
+		return address;
+	}
+
+	@Override
+	public int getMtu() {
+		return VirtualNetwork.MTU;
+	}
+
+	@Override
+	public boolean sendPublic(ByteBuffer datagram) {
+		return crashed || network.send(this, datagram, null);
+	}
+
+	@Override
+	public boolean send(ByteBuffer datagram, InetAddress destination) {
+		return crashed || network.send(this, datagram, destination);
+	}
+
+	@Override
+	public List<InetAddress> getBroadcasts() {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public void setBroadcast(InetAddress broadcast) {
+	}
+}